@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.insertInto;
+import static org.jooq.impl.DSL.table;
+
+/**
+ * Binding a batch to the prepared {@code INSERT} of {@code --load-mode=batch}, with and without executing it. Executed
+ * batches are rolled back, so that every invocation inserts the same records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBindBenchmark {
+    private static final String TARGET_TABLE = "BUILDS_COPY";
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private BenchmarkDatabase database;
+    private Result<Record> records;
+    private PreparedStatement statement;
+    private BatchInsertLoader.ColumnBinder[] binders;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("bind", batchSize);
+        records = database.records(batchSize);
+        try (Statement createTable = database.connection.createStatement()) {
+            createTable.execute("CREATE TABLE " + TARGET_TABLE + " AS SELECT * FROM " + BenchmarkDatabase.TABLE + " WHERE 1 = 0");
+        }
+        database.connection.setAutoCommit(false);
+
+        Field<?>[] fields = records.fields();
+        statement = database.connection.prepareStatement(DbSync.renderer(database.connection).render(insertInto(table(TARGET_TABLE), fields).values(new Object[fields.length])));
+        binders = new BatchInsertLoader.ColumnBinder[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            binders[i] = BatchInsertLoader.binderFor(fields[i].getType());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        statement.close();
+        database.connection.setAutoCommit(true);
+        try (Statement dropTable = database.connection.createStatement()) {
+            dropTable.execute("DROP TABLE " + TARGET_TABLE);
+        }
+        database.close();
+    }
+
+    @Benchmark
+    public void bind() throws SQLException {
+        bindRecords();
+        statement.clearBatch();
+    }
+
+    @Benchmark
+    public int[] bindAndExecute() throws SQLException {
+        bindRecords();
+        int[] counts = statement.executeBatch();
+        database.connection.rollback();
+        return counts;
+    }
+
+    private void bindRecords() throws SQLException {
+        for (Record record : records) {
+            for (int i = 0; i < binders.length; i++) {
+                Object value = record.get(i);
+                if (value == null) {
+                    statement.setNull(i + 1, Types.NULL);
+                } else {
+                    binders[i].bind(statement, i + 1, value);
+                }
+            }
+            statement.addBatch();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Record;
+import org.jooq.Result;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.jooq.impl.DSL.*;
+
+/**
+ * An in-memory H2 database with a table shaped like {@code BUILDS}, filled with generated records.
+ */
+class BenchmarkDatabase implements AutoCloseable {
+    static final String TABLE = "BUILDS";
+
+    final Connection connection;
+
+    BenchmarkDatabase(String name, int records) throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + TABLE);
+            statement.execute("CREATE TABLE " + TABLE + " (" +
+                    "ID BIGINT PRIMARY KEY, " +
+                    "NAME VARCHAR(255), " +
+                    "STATE VARCHAR(255), " +
+                    "RESULT VARCHAR(255), " +
+                    "SCHEDULEDDATE TIMESTAMP, " +
+                    "IGNORED BOOLEAN, " +
+                    "DURATION DECIMAL(12, 2), " +
+                    "AGENTUUID VARCHAR(255))");
+            statement.execute("INSERT INTO " + TABLE + " SELECT X, " +
+                    "'linux-firefox-' || MOD(X, 50), " +
+                    "CASE WHEN MOD(X, 10) = 0 THEN 'Building' ELSE 'Completed' END, " +
+                    "CASE WHEN MOD(X, 7) = 0 THEN 'Failed' ELSE 'Passed' END, " +
+                    "DATEADD('SECOND', X, TIMESTAMP '2020-01-01 00:00:00'), " +
+                    "MOD(X, 2) = 0, " +
+                    "X / 100.0, " +
+                    "RANDOM_UUID() " +
+                    "FROM SYSTEM_RANGE(1, " + records + ")");
+        }
+    }
+
+    Result<Record> records(int count) {
+        return using(connection).select(asterisk()).from(TABLE).orderBy(field("ID")).limit(count).fetch();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE " + TABLE);
+        }
+        connection.close();
+    }
+}
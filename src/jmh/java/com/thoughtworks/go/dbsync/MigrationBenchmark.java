@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import com.beust.jcommander.JCommander;
+import com.thoughtworks.go.dbsync.cli.Args;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Migrates a {@link SyntheticDataset} end to end, and keeps the run report with the wall time of each phase. The
+ * dataset is generated once for each size and reused by later runs, while the target is an H2 database that is
+ * recreated for every run, unless another {@code --target-db-url} is given.
+ * <p>
+ * Usage: {@code MigrationBenchmark <modifications> [migrator options...]}, see the {@code migrationBenchmark} task.
+ */
+public class MigrationBenchmark {
+    public static void main(String[] argv) throws Exception {
+        long modifications = Long.parseLong(argv[0]);
+        List<String> migratorArgs = new ArrayList<>(Arrays.asList(argv).subList(1, argv.length));
+
+        File sourceDir = new File("source-" + modifications);
+        String sourceUrl = "jdbc:h2:" + new File(sourceDir, "cruise").getAbsolutePath();
+        if (!new File(sourceDir, "cruise.mv.db").exists()) {
+            new SyntheticDataset(sourceUrl, modifications).generate();
+        }
+
+        File targetDir = new File("target");
+        FileUtils.deleteDirectory(targetDir);
+
+        migratorArgs.add("--source-db-url=" + sourceUrl);
+        if (migratorArgs.stream().noneMatch(arg -> arg.startsWith("--target-db-url"))) {
+            migratorArgs.add("--target-db-url=jdbc:h2:" + new File(targetDir, "cruise").getAbsolutePath());
+            migratorArgs.add("--target-db-user=sa");
+        }
+        if (!migratorArgs.contains("--insert") && !migratorArgs.contains("-i")) {
+            migratorArgs.add("--insert");
+        }
+
+        Args args = new Args();
+        JCommander.newBuilder().addObject(args).build().parse(migratorArgs.toArray(new String[0]));
+        args.sourceDbDriverClass = driverClass(args.sourceDbDriverClass, args.sourceDbUrl);
+        args.targetDbDriverClass = driverClass(args.targetDbDriverClass, args.targetDbUrl);
+
+        new DbSync(args).export();
+
+        File report = new File("reports", String.format("report-%d-%s.json", modifications, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))));
+        FileUtils.copyFile(new File("dumps", "report.json"), report);
+        LOG.info("Wrote run report for {} modifications to {}.", modifications, report.getAbsolutePath());
+    }
+
+    private static String driverClass(String driverClass, String url) {
+        if (driverClass != null) {
+            return driverClass;
+        } else if (url.startsWith("jdbc:postgresql:")) {
+            return org.postgresql.Driver.class.getName();
+        } else if (url.startsWith("jdbc:mysql:")) {
+            return com.mysql.cj.jdbc.Driver.class.getName();
+        } else {
+            return org.h2.Driver.class.getName();
+        }
+    }
+}
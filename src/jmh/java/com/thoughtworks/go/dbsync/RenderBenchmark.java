@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.DSLContext;
+import org.jooq.InsertValuesStepN;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static org.jooq.impl.DSL.insertInto;
+import static org.jooq.impl.DSL.table;
+
+/**
+ * Rendering a batch as an inlined multi-row {@code INSERT}, as done for {@code --output} and {@code --load-mode=insert},
+ * and converting records to arrays, which every load mode does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private BenchmarkDatabase database;
+    private Result<Record> records;
+    private DSLContext renderer;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("render", batchSize);
+        records = database.records(batchSize);
+        renderer = DbSync.renderer(database.connection);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public String renderInlined() {
+        InsertValuesStepN<Record> insertQuery = insertInto(table(BenchmarkDatabase.TABLE), records.fields());
+        for (Record record : records) {
+            //noinspection ResultOfMethodCallIgnored
+            insertQuery.values(record.intoArray());
+        }
+        return renderer.renderInlined(insertQuery);
+    }
+
+    @Benchmark
+    public void intoArray(Blackhole blackhole) {
+        for (Record record : records) {
+            blackhole.consume(record.intoArray());
+        }
+    }
+}
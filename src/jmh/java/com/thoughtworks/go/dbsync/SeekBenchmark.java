@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Record;
+import org.jooq.Result;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a table of 100,000 records using seek pagination, as done by {@code --read-mode=seek}, at different batch
+ * sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeekBenchmark {
+    private static final int RECORDS = 100_000;
+
+    @Param({"100", "1000", "10000"})
+    public int batchSize;
+
+    private BenchmarkDatabase database;
+
+    @Setup
+    public void setUp() throws SQLException {
+        database = new BenchmarkDatabase("seek", RECORDS);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public long readTable() throws Exception {
+        long records = 0;
+        try (BatchReader reader = new SeekBatchReader(database.connection, IdRange.wholeTable(BenchmarkDatabase.TABLE, RECORDS), BatchSizer.fixed(batchSize))) {
+            Result<Record> batch;
+            while ((batch = reader.next()) != null) {
+                records += batch.size();
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Builds a source H2 database shaped like a GoCD database, with the schema of {@code create-schema.xml} and records
+ * generated in proportion to the number of {@code MODIFICATIONS}: one material for every 10,000 modifications, one
+ * pipeline for every 10 modifications with 2 stages each, 3 jobs per stage, 5 state transitions per job, and 3
+ * modified files per modification. Comments vary from a line to about 50KB, and modification ids have gaps, as left
+ * behind by deleted records and sequence caches.
+ */
+class SyntheticDataset {
+    private static final long RECORDS_PER_INSERT = 1_000_000;
+
+    private final String url;
+    private final long modifications;
+
+    SyntheticDataset(String url, long modifications) {
+        this.url = url;
+        this.modifications = modifications;
+    }
+
+    void generate() throws Exception {
+        LOG.info("Generating a synthetic database with {} modifications at {}.", modifications, url);
+        try (BasicDataSource dataSource = Util.createDataSource("org.h2.Driver", url, "sa", "", 1);
+             LiquibaseSession liquibase = new LiquibaseSession(dataSource)) {
+            liquibase.update("createSchema");
+        }
+
+        long materials = Math.max(1, modifications / 10_000);
+        long pipelines = Math.max(1, modifications / 10);
+        long stages = 2 * pipelines;
+        long builds = 3 * stages;
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            fill(connection, "MATERIALS", materials,
+                    "ID, TYPE, URL, BRANCH, FINGERPRINT, FLYWEIGHTNAME",
+                    "X, 'GitMaterial', 'https://git.example.com/repo-' || X || '.git', 'master', LPAD(CAST(X AS VARCHAR), 64, '0'), 'material-' || X");
+
+            fill(connection, "PIPELINES", pipelines,
+                    "ID, NAME, BUILDCAUSETYPE, BUILDCAUSEBY, LABEL, BUILDCAUSEMESSAGE, COUNTER, NATURALORDER",
+                    "X, 'pipeline-' || MOD(X, 200), 'ModificationBuildCause', 'changes', CAST(X AS VARCHAR), 'modified by dev-' || MOD(X, 500), X, X");
+
+            fill(connection, "STAGES", stages,
+                    "ID, NAME, APPROVEDBY, PIPELINEID, CREATEDTIME, ORDERID, RESULT, APPROVALTYPE, COUNTER, STATE, LATESTRUN, FETCHMATERIALS, CLEANWORKINGDIR, ARTIFACTSDELETED, LASTTRANSITIONEDTIME",
+                    "X, 'stage-' || MOD(X, 2), 'changes', (X - 1) / 2 + 1, " + timestamp("X") + ", MOD(X, 2) + 1, " + result("X") + ", 'success', 1, " + result("X") + ", TRUE, TRUE, FALSE, FALSE, " + timestamp("X"));
+
+            fill(connection, "BUILDS", builds,
+                    "ID, NAME, STATE, RESULT, AGENTUUID, SCHEDULEDDATE, STAGEID, IGNORED, RUNONALLAGENTS, RERUN, RUNMULTIPLEINSTANCE",
+                    "X, 'job-' || MOD(X, 3), 'Completed', " + result("X") + ", 'agent-' || MOD(X, 50), " + timestamp("X") + ", (X - 1) / 3 + 1, FALSE, FALSE, FALSE, FALSE");
+
+            fill(connection, "BUILDSTATETRANSITIONS", 5 * builds,
+                    "ID, CURRENTSTATE, STATECHANGETIME, BUILDID, STAGEID",
+                    "X, CASE MOD(X, 5) WHEN 1 THEN 'Scheduled' WHEN 2 THEN 'Assigned' WHEN 3 THEN 'Preparing' WHEN 4 THEN 'Building' ELSE 'Completed' END, " + timestamp("X") + ", (X - 1) / 5 + 1, (X - 1) / 15 + 1");
+
+            fill(connection, "MODIFICATIONS", modifications,
+                    "ID, USERNAME, COMMENT, REVISION, MODIFIEDTIME, FROMEXTERNAL, MATERIALID, ADDITIONALDATA",
+                    modificationId("X") + ", 'dev-' || MOD(X, 500) || ' <dev-' || MOD(X, 500) || '@example.com>', " +
+                            "REPEAT('Fix flaky test in the build pipeline. ', CASE WHEN MOD(X, 1000) = 0 THEN 1300 ELSE 1 + MOD(X, 30) END), " +
+                            "LPAD(CAST(X AS VARCHAR), 40, '0'), " + timestamp("X") + ", FALSE, MOD(X, " + materials + ") + 1, " +
+                            "CASE WHEN MOD(X, 10) = 0 THEN '{\"ISSUE\": \"GOCD-' || X || '\"}' END");
+
+            fill(connection, "MODIFIEDFILES", 3 * modifications,
+                    "ID, FILENAME, ACTION, MODIFICATIONID",
+                    "X, 'src/main/java/com/example/module' || MOD(X, 1000) || '/File' || X || '.java', " +
+                            "CASE MOD(X, 3) WHEN 0 THEN 'added' WHEN 1 THEN 'modified' ELSE 'deleted' END, " + modificationId("((X - 1) / 3 + 1)"));
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE");
+            }
+        }
+    }
+
+    /**
+     * Inserts in chunks, so that the undo log of a single transaction does not grow with the size of the dataset.
+     */
+    private static void fill(Connection connection, String table, long records, String columns, String values) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        try (Statement statement = connection.createStatement()) {
+            for (long from = 1; from <= records; from += RECORDS_PER_INSERT) {
+                long to = Math.min(records, from + RECORDS_PER_INSERT - 1);
+                statement.execute("INSERT INTO " + table + " (" + columns + ") SELECT " + values + " FROM SYSTEM_RANGE(" + from + ", " + to + ")");
+            }
+        }
+        LOG.info("  {}: {} records in {}ms", table, records, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Skips 100 ids after every 997 modifications.
+     */
+    private static String modificationId(String index) {
+        return "(" + index + " + 100 * (" + index + " / 997))";
+    }
+
+    private static String timestamp(String index) {
+        return "DATEADD('SECOND', " + index + " * 30, TIMESTAMP '2015-01-01 00:00:00')";
+    }
+
+    private static String result(String index) {
+        return "CASE WHEN MOD(" + index + ", 7) = 0 THEN 'Failed' ELSE 'Passed' END";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.InsertValuesStepN;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.jooq.impl.DSL.insertInto;
+import static org.jooq.impl.DSL.table;
+
+/**
+ * Writing a rendered batch of 1000 records to the {@code --output} file, uncompressed, gzip compressed by the writing
+ * thread, or compressed by the {@link ParallelGzipOutputStream}. The output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+    @Param({"none", "gzip", "parallel-gzip"})
+    public String compression;
+
+    private String sql;
+    private Writer writer;
+
+    @Setup
+    public void setUp() throws SQLException {
+        try (BenchmarkDatabase database = new BenchmarkDatabase("write", 1000)) {
+            Result<Record> records = database.records(1000);
+            InsertValuesStepN<Record> insertQuery = insertInto(table(BenchmarkDatabase.TABLE), records.fields());
+            for (Record record : records) {
+                //noinspection ResultOfMethodCallIgnored
+                insertQuery.values(record.intoArray());
+            }
+            sql = DbSync.renderer(database.connection).renderInlined(insertQuery);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openWriter() throws IOException {
+        OutputStream out = OutputStream.nullOutputStream();
+        switch (compression) {
+            case "gzip":
+                out = new GZIPOutputStream(out, 1024 * 1024);
+                break;
+            case "parallel-gzip":
+                out = new ParallelGzipOutputStream(out, Math.min(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            default:
+                break;
+        }
+        writer = new OutputStreamWriter(out);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() throws IOException {
+        writer.close();
+    }
+
+    @Benchmark
+    public void write() {
+        Util.executeAndLog(null, writer, sql, false);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the batch size of a table to the observed throughput, using additive increase and multiplicative decrease.
+ * <p>
+ * The first batch is small, and is only used to estimate the size of a row. From there on the batch size grows by a
+ * fixed step for as long as batches complete within the latency target and the throughput in bytes/sec holds up, and
+ * is halved when a batch is too slow, or throughput drops well below the best seen so far. The batch size never
+ * exceeds the row cap, or the number of rows that fit in the byte cap.
+ */
+class AdaptiveBatchSizer implements BatchSizer {
+    private static final int INITIAL_ROWS = 1_000;
+    private static final int MIN_ROWS = 100;
+    private static final long TARGET_LATENCY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final String table;
+    private final int maxRows;
+    private final long maxBytes;
+    private final int increment;
+
+    private int batchSize;
+    private int smallestBatchSize;
+    private int largestBatchSize;
+    private long batches;
+    private double bytesPerRow;
+    private double bestBytesPerSecond;
+
+    AdaptiveBatchSizer(String table, int maxRows, long maxBytes) {
+        this.table = table;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.increment = Math.max(MIN_ROWS, maxRows / 20);
+        this.batchSize = clamp(INITIAL_ROWS);
+        this.smallestBatchSize = batchSize;
+        this.largestBatchSize = batchSize;
+    }
+
+    @Override
+    public synchronized int nextBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public boolean measuresBatches() {
+        return true;
+    }
+
+    @Override
+    public synchronized void batchCompleted(int rows, long bytes, long nanos) {
+        if (rows == 0 || nanos <= 0) {
+            return;
+        }
+
+        batches++;
+        double observedBytesPerRow = (double) bytes / rows;
+        bytesPerRow = bytesPerRow == 0 ? observedBytesPerRow : 0.8 * bytesPerRow + 0.2 * observedBytesPerRow;
+        double bytesPerSecond = bytes * 1e9 / nanos;
+        long rowsWithinByteCap = (long) (maxBytes / Math.max(1, bytesPerRow));
+
+        if (batches == 1) {
+            batchSize = clamp(rowsWithinByteCap / 4);
+        } else if (nanos > TARGET_LATENCY_NANOS || bytesPerSecond < 0.75 * bestBytesPerSecond) {
+            batchSize = clamp(batchSize / 2);
+            // let the best throughput decay, so that a single unusually fast batch does not keep batches small forever
+            bestBytesPerSecond *= 0.9;
+        } else {
+            batchSize = clamp((long) batchSize + increment);
+        }
+
+        bestBytesPerSecond = Math.max(bestBytesPerSecond, bytesPerSecond);
+        batchSize = (int) Math.min(batchSize, Math.max(Math.min(MIN_ROWS, maxRows), rowsWithinByteCap));
+        smallestBatchSize = Math.min(smallestBatchSize, batchSize);
+        largestBatchSize = Math.max(largestBatchSize, batchSize);
+    }
+
+    private int clamp(long rows) {
+        return (int) Math.min(maxRows, Math.max(Math.min(MIN_ROWS, maxRows), rows));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d records per batch (ranged from %d to %d over %d batches, ~%d bytes per record)",
+                table, batchSize, smallestBatchSize, largestBatchSize, batches, Math.round(bytesPerRow));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Arrays;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static com.thoughtworks.go.dbsync.DbSync.renderer;
+import static org.jooq.impl.DSL.insertInto;
+import static org.jooq.impl.DSL.table;
+
+/**
+ * Inserts records using a single parameterised {@code INSERT} statement that is prepared once per table, and is
+ * executed as a JDBC batch for every batch of records.
+ */
+class BatchInsertLoader implements TableLoader {
+    private final String table;
+    private final BulkLoadSession session;
+    private final Connection connection;
+    private PreparedStatement statement;
+    private ColumnBinder[] binders;
+    private long recordsSent;
+    private long recordsInserted;
+
+    BatchInsertLoader(String table, BulkLoadSession session) {
+        this.table = table;
+        this.session = session;
+        this.connection = session.connection();
+    }
+
+    @Override
+    public boolean load(Result<Record> records) throws SQLException {
+        if (statement == null) {
+            prepare(records.fields());
+        }
+
+        for (Record record : records) {
+            for (int i = 0; i < binders.length; i++) {
+                Object value = record.get(i);
+                if (value == null) {
+                    statement.setNull(i + 1, Types.NULL);
+                } else {
+                    binders[i].bind(statement, i + 1, value);
+                }
+            }
+            statement.addBatch();
+        }
+
+        return executeBatch(records.size());
+    }
+
+    @Override
+    public boolean load(SourceRows rows, int maxRows) throws SQLException {
+        if (statement == null) {
+            prepare(Arrays.stream(rows.columnNames()).map(DSL::name).map(DSL::field).toArray(Field[]::new));
+        }
+
+        int rowCount = 0;
+        while (rowCount < maxRows && rows.next()) {
+            rows.bind(statement);
+            statement.addBatch();
+            rowCount++;
+        }
+
+        return rowCount > 0 && executeBatch(rowCount);
+    }
+
+    private boolean executeBatch(int rowCount) throws SQLException {
+        for (int count : statement.executeBatch()) {
+            // drivers that rewrite batches into multi-row statements do not report the count of each row
+            recordsInserted += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        recordsSent += rowCount;
+
+        if (session.commitDue()) {
+            session.commit();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try (BulkLoadSession ignored = session) {
+            if (statement == null) {
+                return;
+            }
+
+            statement.close();
+            LOG.debug("Inserted {} records into table {}", recordsInserted, table);
+
+            if (recordsInserted != recordsSent) {
+                throw new RuntimeException(String.format("Expected batch INSERT into table %s to load %d records but it loaded %d records", table, recordsSent, recordsInserted));
+            }
+            session.commit();
+        }
+    }
+
+    private void prepare(Field<?>[] fields) throws SQLException {
+        String sql = renderer(connection).render(insertInto(table(table), fields).values(new Object[fields.length]));
+        LOG.debug("Preparing {}", sql);
+        statement = connection.prepareStatement(sql);
+
+        binders = new ColumnBinder[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            binders[i] = binderFor(fields[i].getType());
+        }
+    }
+
+    static ColumnBinder binderFor(Class<?> type) {
+        if (type == Long.class) {
+            return (statement, index, value) -> statement.setLong(index, ((Number) value).longValue());
+        } else if (type == Integer.class) {
+            return (statement, index, value) -> statement.setInt(index, ((Number) value).intValue());
+        } else if (type == Short.class) {
+            return (statement, index, value) -> statement.setShort(index, ((Number) value).shortValue());
+        } else if (type == Double.class) {
+            return (statement, index, value) -> statement.setDouble(index, ((Number) value).doubleValue());
+        } else if (type == Boolean.class) {
+            return (statement, index, value) -> statement.setBoolean(index, (Boolean) value);
+        } else if (type == String.class) {
+            return (statement, index, value) -> statement.setString(index, (String) value);
+        } else if (type == Timestamp.class) {
+            return (statement, index, value) -> statement.setTimestamp(index, (Timestamp) value);
+        } else if (type == Date.class) {
+            return (statement, index, value) -> statement.setDate(index, (Date) value);
+        } else if (type == BigDecimal.class) {
+            return (statement, index, value) -> statement.setBigDecimal(index, (BigDecimal) value);
+        } else if (type == byte[].class) {
+            return (statement, index, value) -> statement.setBytes(index, (byte[]) value);
+        } else {
+            return PreparedStatement::setObject;
+        }
+    }
+
+    interface ColumnBinder {
+        void bind(PreparedStatement statement, int index, Object value) throws SQLException;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+
+import java.util.Arrays;
+
+/**
+ * Reads the records of an {@link IdRange} from the source database, one batch at a time, with batch sizes decided by
+ * a {@link BatchSizer}.
+ */
+abstract class BatchReader implements Pipeline.Source<Result<Record>>, AutoCloseable {
+    private final BatchSizer batchSizer;
+    private long previousBatchStart;
+    private int previousBatchRows;
+    private long previousBatchBytes;
+
+    BatchReader(BatchSizer batchSizer) {
+        this.batchSizer = batchSizer;
+    }
+
+    @Override
+    public final Result<Record> next() throws Exception {
+        long now = System.nanoTime();
+        if (batchSizer.measuresBatches() && previousBatchRows > 0) {
+            batchSizer.batchCompleted(previousBatchRows, previousBatchBytes, now - previousBatchStart);
+        }
+
+        Result<Record> records = fetch(batchSizer.nextBatchSize());
+
+        if (batchSizer.measuresBatches() && records != null) {
+            previousBatchStart = now;
+            previousBatchRows = records.size();
+            previousBatchBytes = estimatedBytes(records);
+        }
+        return records;
+    }
+
+    /**
+     * @return the next batch of at most {@code batchSize} records, or {@code null} when there are no more records.
+     */
+    protected abstract Result<Record> fetch(int batchSize) throws Exception;
+
+    @Override
+    public void close() throws Exception {
+    }
+
+    static long lastId(Result<Record> records) {
+        Field<?> idField = Arrays.stream(records.fields())
+                .filter(field -> field.getName().equalsIgnoreCase("id"))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Unable to determine id column"));
+
+        return ((Number) records.get(records.size() - 1).getValue(idField)).longValue();
+    }
+
+    static long maxId(Result<Record> records) {
+        Field<?> idField = Arrays.stream(records.fields())
+                .filter(field -> field.getName().equalsIgnoreCase("id"))
+                .findFirst()
+                .orElseThrow(() -> new RuntimeException("Unable to determine id column"));
+
+        long maxId = Long.MIN_VALUE;
+        for (Record record : records) {
+            maxId = Math.max(maxId, ((Number) record.getValue(idField)).longValue());
+        }
+        return maxId;
+    }
+
+    static long estimatedBytes(Result<Record> records) {
+        long bytes = 0;
+        for (Record record : records) {
+            for (int i = 0; i < record.size(); i++) {
+                Object value = record.get(i);
+                if (value instanceof CharSequence) {
+                    bytes += ((CharSequence) value).length();
+                } else if (value instanceof byte[]) {
+                    bytes += ((byte[]) value).length;
+                } else {
+                    bytes += 8;
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+/**
+ * Decides how many records a {@link BatchReader} reads in its next batch.
+ */
+interface BatchSizer {
+    int nextBatchSize();
+
+    /**
+     * Reports a batch that went through the copy, along with an estimate of its size and the time it took between
+     * starting to read it, and starting to read the next batch. Only called when {@link #measuresBatches()} is true.
+     */
+    default void batchCompleted(int rows, long bytes, long nanos) {
+    }
+
+    default boolean measuresBatches() {
+        return false;
+    }
+
+    static BatchSizer fixed(int batchSize) {
+        return () -> batchSize;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.thoughtworks.go.dbsync.BinaryRowWriter.readString;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.name;
+
+/**
+ * Reads the records of an id range written by {@link BinaryRowWriter}, one record at a time.
+ */
+class BinaryRowReader implements AutoCloseable {
+    private final DataInputStream in;
+    private final String table;
+    private final String[] columnNames;
+    private final BinaryRowWriter.ColumnType[] types;
+
+    BinaryRowReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+
+        if (this.in.readInt() != BinaryRowWriter.MAGIC) {
+            throw new IOException("Not a binary row file");
+        }
+        int version = this.in.readInt();
+        if (version != BinaryRowWriter.VERSION) {
+            throw new IOException("Unsupported binary row file version " + version);
+        }
+
+        table = readString(this.in);
+        int columnCount = this.in.readInt();
+        columnNames = new String[columnCount];
+        types = new BinaryRowWriter.ColumnType[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = readString(this.in);
+            types[i] = BinaryRowWriter.ColumnType.forCode(this.in.readByte());
+        }
+    }
+
+    String table() {
+        return table;
+    }
+
+    String[] columnNames() {
+        return columnNames.clone();
+    }
+
+    Field<?>[] fields() {
+        Field<?>[] fields = new Field<?>[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            fields[i] = field(name(columnNames[i]), types[i].javaType);
+        }
+        return fields;
+    }
+
+    /**
+     * @return the values of the next record, or {@code null} after the last record.
+     */
+    Object[] next() throws IOException {
+        byte marker = in.readByte();
+        if (marker == BinaryRowWriter.END) {
+            return null;
+        }
+        if (marker != BinaryRowWriter.ROW) {
+            throw new IOException("Corrupt binary row file for table " + table + ", found marker " + marker);
+        }
+
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            if (in.readBoolean()) {
+                values[i] = types[i].read(in);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes the records of an id range in a typed binary format, instead of as inlined {@code INSERT} statements, which
+ * saves rendering every value as a SQL literal and parsing it again on the target. A file starts with a header that
+ * names the table and the name and type of each column, taken from the fields of the first batch. Each record follows
+ * as a row marker and its values, each value as a null marker followed by a fixed width encoding for numbers, dates
+ * and timestamps, or a length prefixed encoding for text, decimals and binary values. Files are read back by
+ * {@link BinaryRowReader}.
+ */
+class BinaryRowWriter implements AutoCloseable {
+    static final int MAGIC = 0x47435257; // "GCRW"
+    static final int VERSION = 1;
+    static final byte ROW = 1;
+    static final byte END = 0;
+
+    private final DataOutputStream out;
+    private final String table;
+    private ColumnType[] types;
+
+    BinaryRowWriter(OutputStream out, String table) {
+        this.out = new DataOutputStream(out);
+        this.table = table;
+    }
+
+    /**
+     * Writes a batch of records. Batches may be written by several writer threads of the copy pipeline.
+     */
+    synchronized void write(Result<Record> records) throws IOException {
+        if (types == null) {
+            Field<?>[] fields = records.fields();
+            String[] names = new String[fields.length];
+            Class<?>[] javaTypes = new Class<?>[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                names[i] = fields[i].getName();
+                javaTypes[i] = fields[i].getType();
+            }
+            writeHeader(names, javaTypes);
+        }
+
+        for (Record record : records) {
+            writeRow(record.intoArray());
+        }
+    }
+
+    synchronized void writeHeader(String[] names, Class<?>[] javaTypes) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, table);
+        out.writeInt(names.length);
+
+        types = new ColumnType[names.length];
+        for (int i = 0; i < names.length; i++) {
+            types[i] = ColumnType.of(javaTypes[i]);
+            writeString(out, names[i]);
+            out.writeByte(types[i].code);
+        }
+    }
+
+    synchronized void writeRow(Object[] values) throws IOException {
+        out.writeByte(ROW);
+        for (int i = 0; i < types.length; i++) {
+            if (values[i] == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                types[i].write(out, values[i]);
+            }
+        }
+    }
+
+    /**
+     * Ends the file, and flushes it without closing the underlying stream. A range without records is written as a
+     * header without columns.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (types == null) {
+            writeHeader(new String[0], new Class<?>[0]);
+        }
+        out.writeByte(END);
+        out.flush();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The encoding of the values of a column, identified in the header by its code, which must not change once
+     * written. Values of types without an encoding of their own are written as text.
+     */
+    enum ColumnType {
+        LONG(1, Long.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeLong(((Number) value).longValue());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return in.readLong();
+            }
+        },
+        INTEGER(2, Integer.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeInt(((Number) value).intValue());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return in.readInt();
+            }
+        },
+        SHORT(3, Short.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeShort(((Number) value).shortValue());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return in.readShort();
+            }
+        },
+        DOUBLE(4, Double.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeDouble(((Number) value).doubleValue());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return in.readDouble();
+            }
+        },
+        BOOLEAN(5, Boolean.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeBoolean((Boolean) value);
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return in.readBoolean();
+            }
+        },
+        TIMESTAMP(6, Timestamp.class) {
+            // the local date and time, as in an inlined timestamp literal
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                LocalDateTime dateTime = ((Timestamp) value).toLocalDateTime();
+                out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(dateTime.getNano());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return Timestamp.valueOf(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            }
+        },
+        DATE(7, Date.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                out.writeLong(((Date) value).toLocalDate().toEpochDay());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+            }
+        },
+        DECIMAL(8, BigDecimal.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                BigDecimal decimal = (BigDecimal) value;
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                out.writeInt(decimal.scale());
+                out.writeInt(unscaled.length);
+                out.write(unscaled);
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                int scale = in.readInt();
+                byte[] unscaled = new byte[in.readInt()];
+                in.readFully(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            }
+        },
+        BYTES(9, byte[].class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                byte[] bytes = (byte[]) value;
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            }
+        },
+        STRING(10, String.class) {
+            @Override
+            void write(DataOutputStream out, Object value) throws IOException {
+                writeString(out, value.toString());
+            }
+
+            @Override
+            Object read(DataInputStream in) throws IOException {
+                return readString(in);
+            }
+        };
+
+        final byte code;
+        final Class<?> javaType;
+
+        ColumnType(int code, Class<?> javaType) {
+            this.code = (byte) code;
+            this.javaType = javaType;
+        }
+
+        abstract void write(DataOutputStream out, Object value) throws IOException;
+
+        abstract Object read(DataInputStream in) throws IOException;
+
+        static ColumnType of(Class<?> javaType) {
+            for (ColumnType type : values()) {
+                if (type.javaType == javaType) {
+                    return type;
+                }
+            }
+            return STRING;
+        }
+
+        static ColumnType forCode(byte code) throws IOException {
+            for (ColumnType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IOException("Unknown column type " + code + " in binary row file");
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.SQLDialect;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Settings of the target database that trade durability for load speed while records are copied. Session settings are
+ * applied to the connection of each table worker by {@link BulkLoadSession}, global settings and unlogged tables are
+ * applied by {@link #begin(Collection)} before the copy, and are reverted and verified by {@link #end(Collection)}
+ * before sequences and indices are created.
+ * <p>
+ * Global settings outlive the migration when it is killed before it reverts them, so their original values are
+ * recorded in the {@link CheckpointJournal}, and a resumed migration reverts them to those values rather than to the
+ * values it finds.
+ */
+class BulkLoadProfile {
+    private final SQLDialect dialect;
+    private final boolean relaxed;
+    private final boolean unloggedTables;
+    private final DataSource dataSource;
+    private final CheckpointJournal journal;
+    private final Map<String, String> originalGlobalSettings = new LinkedHashMap<>();
+    private final Set<String> unsupportedSettings = Collections.synchronizedSet(new HashSet<>());
+
+    BulkLoadProfile(DataSource dataSource, CheckpointJournal journal, SQLDialect dialect, boolean relaxed, boolean unloggedTables) {
+        this.dataSource = dataSource;
+        this.journal = journal;
+        this.dialect = dialect;
+        this.relaxed = relaxed;
+        this.unloggedTables = unloggedTables && dialect.family() == SQLDialect.POSTGRES;
+    }
+
+    void begin(Collection<String> tables) throws SQLException, IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            for (Map.Entry<String, String> setting : globalSettings().entrySet()) {
+                if (unsupportedSettings.contains(setting.getKey())) {
+                    continue;
+                }
+
+                String originalValue = journal.originalSetting(setting.getKey());
+                if (originalValue == null) {
+                    originalValue = read(connection, "GLOBAL", setting.getKey());
+                    if (originalValue.equals(setting.getValue())) {
+                        LOG.warn("Setting {} on target database is already '{}' before records are copied, and will be left at that value. " +
+                                "If a previous migration was killed before it could revert the setting, set it back to its original value by hand.", setting.getKey(), originalValue);
+                    }
+                    journal.settingChanged(setting.getKey(), originalValue);
+                } else {
+                    LOG.info("Setting {} on target database will be reverted to '{}', as recorded by a previous run.", setting.getKey(), originalValue);
+                }
+
+                if (change(connection, "GLOBAL", setting.getKey(), setting.getValue())) {
+                    originalGlobalSettings.put(setting.getKey(), originalValue);
+                }
+            }
+
+            if (unloggedTables) {
+                LOG.info("Creating tables as UNLOGGED while records are copied.");
+                for (String table : tables) {
+                    execute(connection, "ALTER TABLE " + table + " SET UNLOGGED");
+                }
+            }
+        }
+    }
+
+    void end(Collection<String> tables) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            revert(connection, "GLOBAL", originalGlobalSettings);
+            originalGlobalSettings.clear();
+
+            if (unloggedTables) {
+                LOG.info("Writing copied records to the WAL, using ALTER TABLE ... SET LOGGED.");
+                for (String table : tables) {
+                    execute(connection, "ALTER TABLE " + table + " SET LOGGED");
+                }
+
+                Set<String> stillUnlogged = new TreeSet<>();
+                try (Statement statement = connection.createStatement();
+                     ResultSet resultSet = statement.executeQuery("SELECT relname FROM pg_class WHERE relpersistence = 'u' AND relkind = 'r'")) {
+                    while (resultSet.next()) {
+                        stillUnlogged.add(resultSet.getString(1).toLowerCase());
+                    }
+                }
+                for (String table : tables) {
+                    if (stillUnlogged.contains(table.toLowerCase())) {
+                        throw new RuntimeException("Table " + table + " is still UNLOGGED on the target database");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the original values of the settings that were changed on the connection.
+     */
+    Map<String, String> applySessionSettings(Connection connection) throws SQLException {
+        Map<String, String> originalSettings = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> setting : sessionSettings().entrySet()) {
+            if (unsupportedSettings.contains(setting.getKey())) {
+                continue;
+            }
+
+            String originalValue = read(connection, "SESSION", setting.getKey());
+            if (change(connection, "SESSION", setting.getKey(), setting.getValue())) {
+                originalSettings.put(setting.getKey(), originalValue);
+            }
+        }
+
+        return originalSettings;
+    }
+
+    void revertSessionSettings(Connection connection, Map<String, String> originalSettings) throws SQLException {
+        revert(connection, "SESSION", originalSettings);
+    }
+
+    private Map<String, String> sessionSettings() {
+        if (!relaxed) {
+            return Map.of();
+        }
+
+        switch (dialect.family()) {
+            case POSTGRES:
+                return Map.of("synchronous_commit", "off");
+            case MYSQL:
+                return Map.of("unique_checks", "0", "foreign_key_checks", "0");
+            default:
+                return Map.of();
+        }
+    }
+
+    private Map<String, String> globalSettings() {
+        if (relaxed && dialect.family() == SQLDialect.MYSQL) {
+            return Map.of("innodb_flush_log_at_trx_commit", "2");
+        }
+        return Map.of();
+    }
+
+    /**
+     * Settings that cannot be changed, because of the version of the target database or missing privileges, are
+     * skipped after logging a warning once.
+     *
+     * @return whether the setting was changed.
+     */
+    private boolean change(Connection connection, String scope, String name, String value) {
+        try {
+            write(connection, scope, name, value);
+            return true;
+        } catch (SQLException e) {
+            if (unsupportedSettings.add(name)) {
+                LOG.warn("Could not change setting {} on target database, it will not be used while copying records: {}", name, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private void revert(Connection connection, String scope, Map<String, String> originalSettings) throws SQLException {
+        for (Map.Entry<String, String> setting : originalSettings.entrySet()) {
+            write(connection, scope, setting.getKey(), setting.getValue());
+
+            String value = read(connection, scope, setting.getKey());
+            if (!setting.getValue().equals(value)) {
+                throw new RuntimeException(String.format("Expected setting %s on target database to be reverted to '%s' but it is '%s'", setting.getKey(), setting.getValue(), value));
+            }
+        }
+    }
+
+    private String read(Connection connection, String scope, String name) throws SQLException {
+        String sql = dialect.family() == SQLDialect.POSTGRES ? "SELECT current_setting('" + name + "')" : "SELECT @@" + scope + "." + name;
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private void write(Connection connection, String scope, String name, String value) throws SQLException {
+        execute(connection, dialect.family() == SQLDialect.POSTGRES ? "SET " + name + " = '" + value + "'" : "SET " + scope + " " + name + " = " + value);
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        LOG.debug("Executing SQL: {}", sql);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * The target connection of a single table worker, with the session settings of the {@link BulkLoadProfile} applied.
+ * Records are committed every {@code commitEveryBatches} batches, or only when the loader completes if that is 0.
+ * Records that are not committed when the session is closed are rolled back.
+ */
+class BulkLoadSession implements AutoCloseable {
+    private final Connection connection;
+    private final BulkLoadProfile profile;
+    private final Map<String, String> originalSettings;
+    private final int commitEveryBatches;
+    private int uncommittedBatches;
+
+    BulkLoadSession(DataSource targetDataSource, BulkLoadProfile profile, int commitEveryBatches) throws SQLException {
+        this.connection = targetDataSource.getConnection();
+        this.profile = profile;
+        this.commitEveryBatches = commitEveryBatches;
+        this.originalSettings = profile.applySessionSettings(connection);
+        connection.setAutoCommit(commitEveryBatches == 1);
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    /**
+     * Counts a loaded batch.
+     *
+     * @return whether the batches loaded so far should be committed now, using {@link #commit()}.
+     */
+    boolean commitDue() {
+        return commitEveryBatches > 0 && ++uncommittedBatches >= commitEveryBatches;
+    }
+
+    void commit() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+        uncommittedBatches = 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection ignored = connection) {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            profile.revertSessionSettings(connection, originalSettings);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * An append-only journal of the progress of a migration, that allows a failed migration to be resumed. Every entry is
+ * synced to disk before the migration moves on. The journal records:
+ * <ul>
+ * <li>{@code phase <name>} once a phase (creating the schema, copying records, etc.) has completed</li>
+ * <li>{@code range <table> <fromIdExclusive> <toIdInclusive|-> <rowCount>} for every id range that is to be copied,
+ * followed by {@code phase plan} once all ranges are recorded</li>
+ * <li>{@code committed <table> <fromIdExclusive> <id>} once all records of a range up to an id are committed on the target</li>
+ * <li>{@code done <table> <fromIdExclusive>} once all records of a range are committed on the target</li>
+ * <li>{@code setting <name> <value>} with the original value of a global setting of the target database, before the
+ * setting is changed while records are copied</li>
+ * </ul>
+ */
+class CheckpointJournal implements Closeable {
+    private final FileOutputStream out;
+    private final Set<String> phasesDone = new HashSet<>();
+    private final List<IdRange> plannedRanges = new ArrayList<>();
+    private final List<IdRange> replayedRanges = new ArrayList<>();
+    private final Map<String, Long> committedIds = new HashMap<>();
+    private final Set<String> rangesDone = new HashSet<>();
+    private final Map<String, String> originalSettings = new HashMap<>();
+
+    CheckpointJournal(File file, boolean resume) throws IOException {
+        if (resume && file.exists()) {
+            for (String entry : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                replay(entry);
+            }
+            LOG.info("Resuming migration from checkpoint journal {}.", file);
+        }
+        this.out = new FileOutputStream(file, resume);
+    }
+
+    synchronized boolean isPhaseDone(String phase) {
+        return phasesDone.contains(phase);
+    }
+
+    synchronized void phaseDone(String phase) throws IOException {
+        phasesDone.add(phase);
+        append("phase " + phase);
+    }
+
+    synchronized List<IdRange> plannedRanges() {
+        return new ArrayList<>(plannedRanges);
+    }
+
+    synchronized void rangesPlanned(List<IdRange> idRanges) throws IOException {
+        StringBuilder entries = new StringBuilder();
+        for (IdRange idRange : idRanges) {
+            entries.append(String.format("range %s %d %s %d\n", idRange.table, idRange.fromIdExclusive, idRange.toIdInclusive == null ? "-" : idRange.toIdInclusive, idRange.rowCount));
+        }
+        entries.append("phase plan");
+
+        // written at once, so that a run that died while planning leaves no partial plan behind
+        append(entries.toString());
+        plannedRanges.clear();
+        plannedRanges.addAll(idRanges);
+        phasesDone.add("plan");
+    }
+
+    synchronized boolean isRangeDone(IdRange idRange) {
+        return rangesDone.contains(key(idRange));
+    }
+
+    /**
+     * @return the id after which copying of the range should continue.
+     */
+    synchronized long resumeAfterId(IdRange idRange) {
+        return committedIds.getOrDefault(key(idRange), idRange.fromIdExclusive);
+    }
+
+    /**
+     * @return the original value of a global setting of the target database, as recorded by this or a previous run, or
+     * {@code null} if it was not recorded.
+     */
+    synchronized String originalSetting(String name) {
+        return originalSettings.get(name);
+    }
+
+    /**
+     * Records the original value of a global setting, unless a previous run already did, in which case the setting may
+     * still have the value it was changed to.
+     */
+    synchronized void settingChanged(String name, String originalValue) throws IOException {
+        if (originalSettings.putIfAbsent(name, originalValue) == null) {
+            append("setting " + name + " " + originalValue);
+        }
+    }
+
+    RangeCheckpoint rangeCheckpoint(IdRange idRange) {
+        return new RangeCheckpoint(key(idRange));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private void replay(String entry) {
+        String[] parts = entry.split(" ");
+        try {
+            switch (parts[0]) {
+                case "phase":
+                    phasesDone.add(parts[1]);
+                    if ("plan".equals(parts[1])) {
+                        plannedRanges.clear();
+                        plannedRanges.addAll(replayedRanges);
+                        replayedRanges.clear();
+                    }
+                    break;
+                case "range":
+                    replayedRanges.add(new IdRange(parts[1], Long.parseLong(parts[4]), Long.parseLong(parts[2]), "-".equals(parts[3]) ? null : Long.valueOf(parts[3])));
+                    break;
+                case "committed":
+                    committedIds.put(parts[1] + " " + parts[2], Long.parseLong(parts[3]));
+                    break;
+                case "done":
+                    rangesDone.add(parts[1] + " " + parts[2]);
+                    break;
+                case "setting":
+                    originalSettings.putIfAbsent(parts[1], entry.split(" ", 3)[2]);
+                    break;
+                default:
+                    LOG.warn("Ignoring unknown checkpoint journal entry '{}'", entry);
+            }
+        } catch (RuntimeException e) {
+            // the last entry may have been partially written when the previous run died
+            LOG.warn("Ignoring incomplete checkpoint journal entry '{}'", entry);
+        }
+    }
+
+    private synchronized void append(String entry) throws IOException {
+        out.write((entry + "\n").getBytes(StandardCharsets.UTF_8));
+        out.getFD().sync();
+    }
+
+    private static String key(IdRange idRange) {
+        return idRange.table + " " + idRange.fromIdExclusive;
+    }
+
+    /**
+     * Tracks the batches of a single id range. Batches may be committed out of order when there is more than one
+     * writer, so only the id up to which every batch has been committed is recorded.
+     */
+    class RangeCheckpoint {
+        private final String key;
+        private final Deque<Long> uncommittedBatches = new ArrayDeque<>();
+        private final Set<Long> committedBatches = new HashSet<>();
+
+        private RangeCheckpoint(String key) {
+            this.key = key;
+        }
+
+        synchronized void batchRead(long lastId) {
+            uncommittedBatches.addLast(lastId);
+        }
+
+        synchronized void batchCommitted(long lastId) throws IOException {
+            committedBatches.add(lastId);
+
+            Long committedUpTo = null;
+            while (!uncommittedBatches.isEmpty() && committedBatches.remove(uncommittedBatches.peekFirst())) {
+                committedUpTo = uncommittedBatches.removeFirst();
+            }
+            if (committedUpTo != null) {
+                append("committed " + key + " " + committedUpTo);
+            }
+        }
+
+        void done() throws IOException {
+            append("done " + key);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Verifies the records of an {@link IdRange} by comparing a checksum of the source records with a checksum of the
+ * target records. The checksum is the sum of a hash of each record, so that it does not depend on the order in which
+ * records are read. Values are normalized before hashing, so that the same value read using different drivers hashes
+ * the same. When checksums differ, the range is split until it is small enough to compare the hash of each record.
+ * <p>
+ * The target records are read on a separate thread while the source records are read, so that verifying a range takes
+ * as long as reading the slower of the two databases, rather than both.
+ */
+class ChecksumVerifier implements AutoCloseable {
+    private static final int DRILL_DOWN_SPLITS = 4;
+    private static final int COMPARE_RECORDS_BELOW = 1000;
+    private static final int MAX_REPORTED_IDS = 10;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final DataSource sourceDataSource;
+    private final DataSource targetDataSource;
+    private final int fetchSize;
+    private final ExecutorService targetReads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "checksum-target");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ChecksumVerifier(DataSource sourceDataSource, DataSource targetDataSource, int fetchSize) {
+        this.sourceDataSource = sourceDataSource;
+        this.targetDataSource = targetDataSource;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return a description of each record that differs between the source and the target.
+     */
+    List<String> verify(IdRange idRange) throws Exception {
+        List<String> differences = new ArrayList<>();
+        verify(idRange, differences);
+        return differences;
+    }
+
+    private void verify(IdRange idRange, List<String> differences) throws Exception {
+        List<Checksum> checksums = fromSourceAndTarget(dataSource -> checksum(dataSource, idRange));
+        Checksum source = checksums.get(0);
+        Checksum target = checksums.get(1);
+        if (source.equals(target)) {
+            return;
+        }
+
+        LOG.debug("Checksums of {} differ, {} records on source and {} records on target", idRange, source.count, target.count);
+        if (Math.max(source.count, target.count) < COMPARE_RECORDS_BELOW) {
+            compareRecords(idRange, differences);
+            return;
+        }
+
+        long maxId = idRange.toIdInclusive != null ? idRange.toIdInclusive : Math.max(source.maxId, target.maxId);
+        List<Long> upperBounds = IdRangeSplitter.equalWidthBounds(idRange.fromIdExclusive + 1, maxId, DRILL_DOWN_SPLITS);
+        if (upperBounds.size() == 1) {
+            compareRecords(idRange, differences);
+            return;
+        }
+
+        long fromIdExclusive = idRange.fromIdExclusive;
+        for (Long toIdInclusive : upperBounds) {
+            verify(new IdRange(idRange.table, 0, fromIdExclusive, toIdInclusive), differences);
+            fromIdExclusive = toIdInclusive;
+        }
+    }
+
+    private void compareRecords(IdRange idRange, List<String> differences) throws Exception {
+        List<Map<Long, Long>> hashes = fromSourceAndTarget(dataSource -> recordHashes(dataSource, idRange));
+        Map<Long, Long> sourceHashes = hashes.get(0);
+        Map<Long, Long> targetHashes = hashes.get(1);
+
+        List<String> rangeDifferences = new ArrayList<>();
+        sourceHashes.forEach((id, hash) -> {
+            if (!targetHashes.containsKey(id)) {
+                rangeDifferences.add("Record with id " + id + " in table " + idRange.table + " is missing on target");
+            } else if (!targetHashes.get(id).equals(hash)) {
+                rangeDifferences.add("Record with id " + id + " in table " + idRange.table + " differs between source and target");
+            }
+        });
+        targetHashes.keySet().stream()
+                .filter(id -> !sourceHashes.containsKey(id))
+                .forEach(id -> rangeDifferences.add("Record with id " + id + " in table " + idRange.table + " is not on source"));
+
+        differences.addAll(rangeDifferences.subList(0, Math.min(MAX_REPORTED_IDS, rangeDifferences.size())));
+        if (rangeDifferences.size() > MAX_REPORTED_IDS) {
+            differences.add(String.format("... and %d more differing records in %s", rangeDifferences.size() - MAX_REPORTED_IDS, idRange));
+        }
+    }
+
+    @Override
+    public void close() {
+        targetReads.shutdownNow();
+    }
+
+    /**
+     * Reads from the target on another thread, while reading from the source on this thread.
+     *
+     * @return what was read from the source, followed by what was read from the target.
+     */
+    private <T> List<T> fromSourceAndTarget(DataSourceRead<T> read) throws Exception {
+        Future<T> target = targetReads.submit(() -> read.from(targetDataSource));
+        try {
+            T source = read.from(sourceDataSource);
+            return List.of(source, target.get());
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            // only has an effect when reading from the source failed
+            target.cancel(true);
+        }
+    }
+
+    private Checksum checksum(DataSource dataSource, IdRange idRange) throws Exception {
+        Checksum checksum = new Checksum();
+        forEachRecord(dataSource, idRange, (id, hash) -> {
+            checksum.count++;
+            checksum.sum += hash;
+            checksum.maxId = Math.max(checksum.maxId, id);
+        });
+        return checksum;
+    }
+
+    private Map<Long, Long> recordHashes(DataSource dataSource, IdRange idRange) throws Exception {
+        Map<Long, Long> hashes = new TreeMap<>();
+        forEachRecord(dataSource, idRange, hashes::put);
+        return hashes;
+    }
+
+    private void forEachRecord(DataSource dataSource, IdRange idRange, RecordHashConsumer consumer) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             BatchReader reader = new StreamingBatchReader(connection, idRange, fetchSize, BatchSizer.fixed(fetchSize))) {
+            Result<Record> records;
+            while ((records = reader.next()) != null) {
+                int[] columnOrder = columnOrder(records.fields());
+                int idColumn = columnOrder[0];
+                for (Record record : records) {
+                    consumer.accept(((Number) record.get(idColumn)).longValue(), hash(record, columnOrder));
+                }
+            }
+        }
+    }
+
+    /**
+     * Columns are hashed ordered by name, with the id first, since the source and target tables may list their columns
+     * in a different order.
+     */
+    private static int[] columnOrder(Field<?>[] fields) {
+        return IntStream.range(0, fields.length)
+                .boxed()
+                .sorted(Comparator.<Integer, Boolean>comparing(i -> !fields[i].getName().equalsIgnoreCase("id"))
+                        .thenComparing(i -> fields[i].getName().toUpperCase()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static long hash(Record record, int[] columnOrder) {
+        Object[] values = new Object[columnOrder.length];
+        for (int i = 0; i < columnOrder.length; i++) {
+            values[i] = record.get(columnOrder[i]);
+        }
+        return hash(values);
+    }
+
+    static long hash(Object[] values) {
+        // 64-bit FNV-1a over the normalized values, finished with the SplitMix64 mixer
+        long hash = 0xcbf29ce484222325L;
+        for (Object value : values) {
+            String normalized = normalize(value);
+            for (int i = 0; i < normalized.length(); i++) {
+                hash = (hash ^ normalized.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L; // separates values, so that ("ab", "c") and ("a", "bc") differ
+        }
+
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    static String normalize(Object value) {
+        if (value == null) {
+            return "\u0000";
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        } else if (value instanceof BigDecimal) {
+            return normalize((BigDecimal) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            return normalize(BigDecimal.valueOf(((Number) value).doubleValue()));
+        } else if (value instanceof Number) {
+            return Long.toString(((Number) value).longValue());
+        } else if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        } else if (value instanceof Date) {
+            return ((Date) value).toLocalDate().toString();
+        } else if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : (byte[]) value) {
+                hex.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            return hex.toString();
+        } else {
+            return value.toString();
+        }
+    }
+
+    private static String normalize(BigDecimal value) {
+        return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+    }
+
+    private interface RecordHashConsumer {
+        void accept(long id, long hash);
+    }
+
+    private interface DataSourceRead<T> {
+        T from(DataSource dataSource) throws Exception;
+    }
+
+    private static class Checksum {
+        long count;
+        long sum;
+        long maxId = Long.MIN_VALUE;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Checksum checksum = (Checksum) o;
+            return count == checksum.count && sum == checksum.sum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, sum);
+        }
+    }
+}
@@ -16,10 +16,9 @@
 
 package com.thoughtworks.go.dbsync;
 
-import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.util.ContextInitializer;
+import com.thoughtworks.go.dbsync.MigrationEvents.*;
 import com.thoughtworks.go.dbsync.cli.Args;
-import liquibase.integration.commandline.Main;
+import jdk.jfr.Recording;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
@@ -35,21 +34,22 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.io.*;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.thoughtworks.go.dbsync.Util.*;
 import static com.thoughtworks.go.dbsync.Util.comment;
 import static org.jooq.conf.RenderQuotedNames.EXPLICIT_DEFAULT_QUOTED;
 import static org.jooq.conf.RenderQuotedNames.NEVER;
 import static org.jooq.impl.DSL.*;
-import static org.jooq.tools.StringUtils.isBlank;
 
 public class DbSync {
     static {
@@ -57,29 +57,83 @@ public class DbSync {
         System.setProperty("org.jooq.no-tips", "true");
     }
     static final Logger LOG = LoggerFactory.getLogger(DbSync.class);
+    // connections used outside of the copy and verification of records: by phases, Liquibase, and to apply settings
+    private static final int RESERVED_CONNECTIONS = 4;
 
     private final Args args;
+    private final Pipeline.Stats pipelineStats = new Pipeline.Stats();
+    private final Map<String, AdaptiveBatchSizer> adaptiveBatchSizers = new ConcurrentHashMap<>();
+    private final RunMetrics metrics = new RunMetrics();
+    private final MaxIdTracker maxIds = new MaxIdTracker();
+    private final File reportFile = new File("dumps", "report.json");
+    private final Semaphore sourcePermits;
+    private final Semaphore targetPermits;
+    private CheckpointJournal journal;
+    private BulkLoadProfile bulkLoadProfile;
+    private TableInventory sourceTables;
+    private boolean catchUpPass;
+    private LiquibaseSession liquibase;
+    private DSLContext inlineRenderer;
 
     public DbSync(Args args) {
         this.args = args;
+        this.sourcePermits = new Semaphore(args.sourceConnections, true);
+        this.targetPermits = new Semaphore(args.targetConnections, true);
     }
 
     public void export() throws Exception {
         File dumpsDir = new File("dumps");
-        FileUtils.deleteDirectory(dumpsDir);
+        if (!args.resume) {
+            FileUtils.deleteDirectory(dumpsDir);
+        }
         FileUtils.forceMkdir(dumpsDir);
+        journal = new CheckpointJournal(new File(dumpsDir, "checkpoint.journal"), args.resume);
+        metrics.startStatusUpdates(new File(dumpsDir, "status.json"), args.statusIntervalSeconds);
+        Recording recording = args.jfr ? MigrationEvents.startRecording(new File(dumpsDir, "migration.jfr")) : null;
+
+        try {
+            migrate();
+        } catch (Exception e) {
+            // the report of a failed run is the one most needed, to see where it stopped and how fast it went until then
+            try {
+                metrics.finish(reportFile, "failed: " + e);
+            } catch (IOException reportError) {
+                e.addSuppressed(reportError);
+            }
+            throw e;
+        } finally {
+            if (recording != null) {
+                recording.stop();
+                recording.close();
+            }
+        }
 
-        BasicDataSource sourceDataSource = createDataSource(args.sourceDbDriverClass, args.sourceDbUrl, args.sourceDbUser, args.sourceDbPassword);
-        BasicDataSource targetDataSource = createDataSource(args.targetDbDriverClass, args.targetDbUrl, args.targetDbUser, args.targetDbPassword);
+        LOG.info("Done copying tables!");
+    }
+
+    private void migrate() throws Exception {
+        BasicDataSource sourceDataSource = createDataSource(args.sourceDbDriverClass, args.sourceDbUrl, args.sourceDbUser, args.sourceDbPassword, args.sourceConnections + RESERVED_CONNECTIONS);
+        BasicDataSource targetDataSource = createDataSource(args.targetDbDriverClass, args.targetDbUrl, args.targetDbUser, args.targetDbPassword, args.targetConnections + RESERVED_CONNECTIONS);
 
         withDataSource(sourceDataSource, (connection) -> LOG.info("Using dialect {} for source database.", using(connection).dialect()));
         withDataSource(targetDataSource, (connection) -> LOG.info("Using dialect {} for target database.", using(connection).dialect()));
 
-        withDataSource(sourceDataSource, (connection -> {
+        phase("dbdeploy", sourceDataSource, (connection -> {
             LOG.debug("Checking if source DB contains the changelog table from dbdeploy.");
             if (new DbDeploySchemaVerifier().usesDbDeploy(connection) && isH2OrPostgres()) {
-                LOG.debug("Found changelog table, performing DB migrations using dbdeploy.");
                 String migrationSQL = new DbDeploySchemaMigrator(sourceDataSource, connection).migrationSQL();
+                if (isIntermediateSyncPass()) {
+                    // the GoCD server is still running on the source DB, so its schema must not change under it
+                    if (!migrationSQL.isBlank()) {
+                        LOG.error("Source DB has pending dbdeploy migrations, which are not applied while the GoCD server is running.");
+                        LOG.error("Stop the GoCD server and migrate without '--sync-incremental'.");
+                        metrics.finish(reportFile, "failed: pending dbdeploy migrations");
+                        System.exit(1);
+                    }
+                    return;
+                }
+
+                LOG.debug("Found changelog table, performing DB migrations using dbdeploy.");
                 try (Statement statement = connection.createStatement()) {
                     statement.execute(migrationSQL);
                 }
@@ -88,144 +142,373 @@ public class DbSync {
 
         withDataSource(targetDataSource, (connection -> {
             LOG.debug("Checking if target DB is empty.");
-            Map<String, Integer> tables = listTables(targetDataSource);
+            List<String> tables = TableInventory.tableNames(connection);
+
+            if (tables.isEmpty()) {
+                return;
+            }
 
-            if (!tables.isEmpty()) {
-                LOG.error("Specified target DB is not empty. Contains '{}' tables in public schema.", String.join(", ", tables.keySet()));
+            if (args.syncIncremental) {
+                LOG.info("Target DB already contains tables, only copying records added to the source DB since the previous pass.");
+                catchUpPass = true;
+            } else if (args.resume) {
+                LOG.debug("Resuming a previous migration on target DB.");
+            } else {
+                LOG.error("Specified target DB is not empty. Contains '{}' tables in public schema.", String.join(", ", tables));
                 LOG.error("Skipping migration.");
+                metrics.finish(reportFile, "failed: target DB is not empty");
                 System.exit(1);
             }
         }));
 
-        withWriter((writer) -> {
+        withOutput((output) -> {
             try {
-                Map<String, Integer> tables = listTables(sourceDataSource);
+                withDataSource(sourceDataSource, (connection) -> sourceTables = TableInventory.take(connection));
 
-                withDataSource(targetDataSource, (targetConnection) -> {
-                    LOG.info("Initializing database skeleton on target database.");
-                    executeLiquibaseWithContext(targetDataSource, writer, "createSchema");
-                    LOG.info("Done initializing database skeleton on target database.");
-                });
+                if (!catchUpPass) {
+                    phase("createSchema", targetDataSource, (targetConnection) -> {
+                        LOG.info("Initializing database skeleton on target database.");
+                        output.withPhaseWriter("createSchema", (writer) -> executeLiquibaseWithContext(targetDataSource, writer, "createSchema"));
+                        LOG.info("Done initializing database skeleton on target database.");
+                    });
 
-                withDataSource(targetDataSource, (targetConnection) -> {
-                    LOG.info("Initializing database views.");
-                    executeLiquibaseWithContext(targetDataSource, writer, "createView");
-                    LOG.info("Done initializing database views.");
-                });
+                    phase("createView", targetDataSource, (targetConnection) -> {
+                        LOG.info("Initializing database views.");
+                        output.withPhaseWriter("createView", (writer) -> executeLiquibaseWithContext(targetDataSource, writer, "createView"));
+                        LOG.info("Done initializing database views.");
+                    });
+                }
 
-                withDataSource(targetDataSource, (targetConnection) -> {
+                phase("copy", targetDataSource, (targetConnection) -> {
                     LOG.info("Copying database records.");
-                    doExport(sourceDataSource, targetDataSource, writer);
+                    inlineRenderer = renderer(using(targetConnection).dialect());
+                    bulkLoadProfile = new BulkLoadProfile(targetDataSource, journal, using(targetConnection).dialect(), args.insert && args.bulkLoadProfile, args.insert && args.unloggedTables);
+                    bulkLoadProfile.begin(sourceTables.tableNames());
+                    try {
+                        doExport(sourceDataSource, targetDataSource, output);
+                    } finally {
+                        bulkLoadProfile.end(sourceTables.tableNames());
+                    }
                     LOG.info("Done copying database records.");
                 });
 
-                withDataSource(targetDataSource, (targetConnection) -> {
+                if (isIntermediateSyncPass()) {
+                    LOG.info("Skipping sequences, indices and verification until the final incremental pass with '--sync-final'.");
+                    return;
+                }
+
+                phase("sequences", targetDataSource, (targetConnection) -> {
                     LOG.info("Setting sequences for all tables.");
-                    resetSequences(targetDataSource, tables.keySet(), writer);
+                    output.withPhaseWriter("sequences", (writer) -> resetSequences(targetDataSource, sourceTables.tableNames(), writer));
                     LOG.info("Done setting sequences for all tables.");
                 });
 
-                withDataSource(targetDataSource, (targetConnection) -> {
+                phase("createIndex", targetDataSource, (targetConnection) -> {
                     LOG.info("Initializing database indices and constraints on target database. This may take several minutes, depending on the size of the database.");
-                    executeLiquibaseWithContext(targetDataSource, writer, "createIndex");
+                    output.withPhaseWriter("createIndex", (writer) -> createIndices(targetDataSource, writer));
                     LOG.info("Done initializing database indices and constraints on target database.");
                 });
 
-                withDataSource(targetDataSource, (targetConection) -> {
-                    if (!args.insert) {
-                        LOG.info("No '--insert' option provided, causing no data insertion on the target database. Skipping data verification on target database.");
-                        return;
-                    }
-
-                    LOG.info("Verifying if number of records are identical in source and target.");
-                    List<String> errors = new ArrayList<>();
-
-                    tables.keySet().forEach(tableName -> {
-                        Integer actualCount = using(targetConection).fetchCount(table(tableName));
-                        Integer expectedCount = tables.get(tableName);
-
-                        if (!actualCount.equals(expectedCount)) {
-                            errors.add("Expected table " + tableName + " to contain " + expectedCount + " records but contained " + actualCount + " records");
-                        }
-                    });
-
-                    if (!errors.isEmpty()) {
-                        LOG.error("It appears that there was a problem copying records:");
-                        for (String error : errors) {
-                            LOG.error("  {}", error);
-                        }
-                        System.exit(1);
-                    } else {
-                        LOG.info("All good!");
-                    }
-                });
-
             } catch (Exception e) {
                 LOG.error(null, e);
                 throw new RuntimeException(e);
+            } finally {
+                closeLiquibase();
             }
         });
 
+        // the output is complete before verifying, which may exit
+        if (!isIntermediateSyncPass()) {
+            withDataSource(targetDataSource, (targetConection) -> {
+                if (!args.insert) {
+                    LOG.info("No '--insert' option provided, causing no data insertion on the target database. Skipping data verification on target database.");
+                    return;
+                }
+
+                metrics.phaseStarted("verify");
+                PhaseCompleted event = new PhaseCompleted();
+                event.begin();
+                long verifyStart = System.currentTimeMillis();
+                List<String> errors = args.verify == Args.VerifyMode.CHECKSUM
+                        ? verifyChecksums(sourceDataSource, targetDataSource)
+                        : verifyCounts(sourceDataSource, targetConection);
+                metrics.phaseDone("verify", System.currentTimeMillis() - verifyStart);
+                event.phase = "verify";
+                event.commit();
+
+                if (!errors.isEmpty()) {
+                    LOG.error("It appears that there was a problem copying records:");
+                    for (String error : errors) {
+                        LOG.error("  {}", error);
+                    }
+                    metrics.finish(reportFile, "verification failed");
+                    System.exit(1);
+                } else {
+                    LOG.info("All good!");
+                }
+            });
+        }
+
         try {
+            journal.close();
             targetDataSource.close();
             sourceDataSource.close();
-        } catch (SQLException e) {
+            metrics.finish(reportFile, "completed");
+        } catch (SQLException | IOException e) {
             LOG.error(null, e);
             throw new RuntimeException(e);
         }
+    }
 
-        LOG.info("Done copying tables!");
+    public void replay() throws Exception {
+        BasicDataSource targetDataSource = createDataSource(args.targetDbDriverClass, args.targetDbUrl, args.targetDbUser, args.targetDbPassword, Math.max(args.threads, args.targetConnections) + RESERVED_CONNECTIONS);
+        withDataSource(targetDataSource, (connection) -> LOG.info("Using dialect {} for target database.", using(connection).dialect()));
+
+        LOG.info("Loading dump {} into target database.", args.replay);
+        try {
+            new DumpReplayer(targetDataSource, args.threads).replay(new File(args.replay));
+        } finally {
+            targetDataSource.close();
+        }
+
+        LOG.info("Done loading dump!");
+    }
+
+    private void phase(String phase, BasicDataSource dataSource, ThrowingConsumer<Connection> consumer) throws IOException {
+        phase(journal, metrics, phase, () -> withDataSource(dataSource, consumer));
+    }
+
+    /**
+     * Runs a phase, unless it completed in a previous run. The phase is only journaled as done when it completes
+     * without throwing, so that {@code --resume} runs it again otherwise.
+     */
+    static void phase(CheckpointJournal journal, RunMetrics metrics, String phase, Runnable body) throws IOException {
+        if (journal.isPhaseDone(phase)) {
+            LOG.info("Skipping {}, which completed in a previous run.", phase);
+            return;
+        }
+
+        metrics.phaseStarted(phase);
+        PhaseCompleted event = new PhaseCompleted();
+        event.begin();
+        long startTime = System.currentTimeMillis();
+        body.run();
+        metrics.phaseDone(phase, System.currentTimeMillis() - startTime);
+        event.phase = phase;
+        event.commit();
+        journal.phaseDone(phase);
+    }
+
+    private List<String> verifyCounts(BasicDataSource sourceDataSource, Connection targetConnection) {
+        LOG.info("Verifying if number of records are identical in source and target.");
+        List<String> errors = new ArrayList<>();
+
+        withDataSource(sourceDataSource, (sourceConnection) -> sourceTables.tableNames().forEach(tableName -> {
+            long actualCount = using(targetConnection).fetchCount(table(tableName));
+            long expectedCount = sourceTables.exactRowCount(sourceConnection, tableName);
+
+            if (actualCount != expectedCount) {
+                errors.add("Expected table " + tableName + " to contain " + expectedCount + " records but contained " + actualCount + " records");
+            }
+        }));
+
+        return errors;
+    }
+
+    private List<String> verifyChecksums(BasicDataSource sourceDataSource, BasicDataSource targetDataSource) {
+        LOG.info("Verifying if checksums of records are identical in source and target.");
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        try (ChecksumVerifier verifier = new ChecksumVerifier(sourceDataSource, targetDataSource, args.fetchSize)) {
+            inParallel(new IdRangeScheduler(idRanges(sourceDataSource), sourceTables.estimatedRowBytes(), args.threads), idRange -> {
+                sourcePermits.acquire();
+                targetPermits.acquire();
+                try {
+                    errors.addAll(verifier.verify(idRange));
+                } catch (Exception e) {
+                    LOG.error(null, e);
+                    errors.add("Could not verify " + idRange + ": " + e.getMessage());
+                } finally {
+                    targetPermits.release();
+                    sourcePermits.release();
+                }
+            });
+        }
+
+        return errors;
+    }
+
+    private boolean isIntermediateSyncPass() {
+        return args.syncIncremental && !args.syncFinal;
     }
 
     private boolean isH2OrPostgres() {
         return args.sourceDbUrl.startsWith("jdbc:h2:") || args.sourceDbUrl.startsWith("jdbc:postgresql");
     }
 
-    private void doExport(BasicDataSource sourceDataSource, DataSource targetDataSource, Writer writer) {
-        Map<String, Integer> tables = listTables(sourceDataSource);
+    private void doExport(BasicDataSource sourceDataSource, BasicDataSource targetDataSource, DumpOutput output) throws IOException {
         LOG.info("Found tables:");
 
-        tables.forEach((tableName, recordCount) -> {
-            LOG.info("  {}: {} records", tableName, recordCount);
+        sourceTables.estimatedRowCounts().forEach((tableName, recordCount) -> {
+            LOG.info("  {}: about {} records", tableName, recordCount);
         });
 
+        List<IdRange> idRanges = plannedIdRanges(sourceDataSource, targetDataSource);
+
         LOG.info("Waiting for record copy to complete...");
-        try (ProgressBar progressBar = progressBar(tables)) {
-            ThreadPoolExecutor executor = new ThreadPoolExecutor(args.threads, args.threads, 5L, TimeUnit.SECONDS, new LinkedQueue<>(2));
-            try {
-                tables.forEach((String tableName, Integer rowCount) -> executor.execute(() -> {
-                    try (Connection sourceConnection = sourceDataSource.getConnection()) {
-                        dumpTableSQL(tableName, rowCount, sourceConnection, targetDataSource, writer, progressBar);
-                    } catch (Exception e) {
-                        LOG.error(null, e);
-                        throw new RuntimeException(e);
+        try (ProgressBar progressBar = progressBar(idRanges)) {
+            // ranges copied in a previous run are left out of the scheduler, so they do not count as instant throughput
+            List<IdRange> remainingRanges = new ArrayList<>();
+            for (IdRange idRange : idRanges) {
+                if (journal.isRangeDone(idRange)) {
+                    LOG.debug("Skipping {}, which was copied in a previous run.", idRange);
+                    maxIds.copiedPreviously(idRange.table);
+                    if (progressBar != null) {
+                        progressBar.stepBy(idRange.rowCount);
                     }
-                }));
-                LOG.debug("Shutting down thread pool executor");
-                executor.shutdown();
-                if (!executor.awaitTermination(args.exportTimeoutSeconds, TimeUnit.SECONDS)) {
-                    throw new InterruptedException(String.format("Timed out after [%s] seconds waiting for DB migration to complete. You may want to consider increasing --export-timeout or allocating more resources.", args.exportTimeoutSeconds));
+                } else {
+                    remainingRanges.add(idRange);
                 }
-            } catch (RuntimeException e) {
-                LOG.error(null, e);
-                throw e;
-            } catch (Exception e) {
-                LOG.error(null, e);
-                throw new RuntimeException(e);
-            } finally {
-                if (!executor.isShutdown()) {
-                    LOG.warn("Forcing shutting down copy tasks...");
-                    executor.shutdownNow();
+            }
+
+            IdRangeScheduler scheduler = new IdRangeScheduler(remainingRanges, sourceTables.estimatedRowBytes(), args.threads);
+            inParallel(scheduler, idRange -> {
+                long waitStart = System.nanoTime();
+                ConnectionAcquired connectionAcquired = new ConnectionAcquired();
+                connectionAcquired.begin();
+                sourcePermits.acquire();
+                try (Connection sourceConnection = sourceDataSource.getConnection()) {
+                    metrics.poolWait.recordSince(waitStart);
+                    connectionAcquired.pool = "source";
+                    connectionAcquired.commit();
+                    output.withRangeWriter(idRange, (writer, rows) -> dumpTableSQL(idRange, sourceConnection, targetDataSource, writer, rows, progressBar));
+                } finally {
+                    sourcePermits.release();
                 }
+            });
+
+            scheduler.logCompletion();
+            scheduler.completionMillis().forEach(metrics::tableCompletion);
+            if (args.pipeline) {
+                LOG.info("Time spent in copy pipeline stages: {}", pipelineStats);
+            }
+            if (args.adaptiveBatchSize) {
+                LOG.info("Batch sizes chosen for tables:");
+                adaptiveBatchSizers.values().forEach(batchSizer -> LOG.info("  {}", batchSizer));
             }
         }
 
     }
 
-    private ProgressBar progressBar(Map<String, Integer> tables) {
+    private void inParallel(IdRangeScheduler scheduler, ThrowingConsumer<IdRange> task) {
+        inParallel(scheduler, args.threads, args.virtualThreads, args.exportTimeoutSeconds, task);
+    }
+
+    /**
+     * Runs a task for each id range on {@code threads} threads, which is shared by the record copy and the checksum
+     * verification. Each thread takes the next range from the scheduler once it is done with the previous one.
+     * <p>
+     * Once a task fails, no more ranges are handed out, and the first failure is thrown when the running tasks are
+     * done, so that the phase running the tasks is not journaled as done.
+     */
+    static void inParallel(IdRangeScheduler scheduler, int threads, boolean virtualThreads, long timeoutSeconds, ThrowingConsumer<IdRange> task) {
+        ExecutorService executor = newExecutor(threads, virtualThreads, Executors.defaultThreadFactory());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    IdRange idRange;
+                    while (failure.get() == null && !Thread.currentThread().isInterrupted() && (idRange = scheduler.next()) != null) {
+                        try {
+                            task.accept(idRange);
+                            scheduler.completed(idRange);
+                        } catch (Exception e) {
+                            LOG.error("Failed to process {}, not starting any more ranges.", idRange, e);
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+            }
+            LOG.debug("Shutting down thread pool executor");
+            executor.shutdown();
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                throw new InterruptedException(String.format("Timed out after [%s] seconds waiting for DB migration to complete. You may want to consider increasing --export-timeout or allocating more resources.", timeoutSeconds));
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        } catch (RuntimeException e) {
+            LOG.error(null, e);
+            throw e;
+        } catch (Exception e) {
+            LOG.error(null, e);
+            throw new RuntimeException(e);
+        } finally {
+            if (!executor.isShutdown()) {
+                LOG.warn("Forcing shutting down copy tasks...");
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private List<IdRange> plannedIdRanges(BasicDataSource sourceDataSource, BasicDataSource targetDataSource) throws IOException {
+        if (journal.isPhaseDone("plan")) {
+            return journal.plannedRanges();
+        }
+
+        List<IdRange> idRanges = catchUpPass ? catchUpIdRanges(sourceDataSource, targetDataSource) : idRanges(sourceDataSource);
+        journal.rangesPlanned(idRanges);
+        return idRanges;
+    }
+
+    private List<IdRange> idRanges(BasicDataSource sourceDataSource) {
+        IdRangeSplitter splitter = new IdRangeSplitter(args.splitRows);
+        List<IdRange> idRanges = new ArrayList<>();
+
+        withDataSource(sourceDataSource, (connection) -> sourceTables.estimatedRowCounts().forEach((tableName, rowCount) -> idRanges.addAll(splitter.split(connection, tableName, rowCount))));
+
+        return idRanges;
+    }
+
+    /**
+     * Every table is copied from where the target left off in the previous pass. Small tables are copied in full, and
+     * the last {@code --sync-tail-window} ids of mutable tables are copied again, since their records may have been
+     * updated since the previous pass. Records that are copied again are first deleted from the target.
+     */
+    private List<IdRange> catchUpIdRanges(BasicDataSource sourceDataSource, BasicDataSource targetDataSource) {
+        Field<Long> idField = field("id", Long.class);
+        List<IdRange> idRanges = new ArrayList<>();
+
+        LOG.info("Records to copy in this pass:");
+        withDataSource(targetDataSource, (targetConnection) -> withDataSource(sourceDataSource, (sourceConnection) -> {
+            for (Map.Entry<String, Long> entry : sourceTables.estimatedRowCounts().entrySet()) {
+                String tableName = entry.getKey();
+                Long maxIdInTarget = using(targetConnection).select(max(idField)).from(tableName).fetchOne(0, Long.class);
+
+                long copyAfterId;
+                if (maxIdInTarget == null || entry.getValue() <= args.syncFullCopyRows) {
+                    copyAfterId = 0L;
+                } else if (args.syncMutableTables.stream().anyMatch(tableName::equalsIgnoreCase)) {
+                    copyAfterId = Math.max(0L, maxIdInTarget - args.syncTailWindow);
+                } else {
+                    copyAfterId = maxIdInTarget;
+                }
+
+                int deletedCount = using(targetConnection).deleteFrom(table(tableName)).where(idField.gt(copyAfterId)).execute();
+                int rowCount = using(sourceConnection).fetchCount(table(tableName), idField.gt(copyAfterId));
+                LOG.info("  {}: {} records after id {} ({} records copied again)", tableName, rowCount, copyAfterId, deletedCount);
+
+                idRanges.add(new IdRange(tableName, rowCount, copyAfterId, null));
+            }
+        }));
+
+        return idRanges;
+    }
+
+    private ProgressBar progressBar(List<IdRange> idRanges) {
         if (args.progress) {
             return new ProgressBarBuilder()
-                    .setInitialMax(tables.values().stream().mapToInt(Integer::intValue).sum())
+                    .setInitialMax(idRanges.stream().mapToLong(idRange -> idRange.rowCount).sum())
                     .setTaskName("record copy progress")
                     .setUnit(" record", 1)
                     .setStyle(ProgressBarStyle.ASCII)
@@ -237,62 +520,55 @@ public class DbSync {
         }
     }
 
-    private void executeLiquibaseWithContext(DataSource targetDataSource, Writer writer, String contexts) throws Exception {
-
-        if (!isBlank(args.outputFile)) {
-            File tempFile = File.createTempFile("updateSQL", ".sql");
-            Main.run(new String[]{
-                    "--logLevel=off",
-                    String.format("--url=%s", this.args.targetDbUrl),
-                    "--changeLogFile=liquibase.xml",
-                    String.format("--username=%s", this.args.targetDbUser),
-                    String.format("--password=%s", this.args.targetDbPassword),
-                    String.format("--outputFile=%s", tempFile.getAbsolutePath()),
-                    String.format("--contexts=%s", contexts),
-                    "update"
-            });
-
-            String sql = FileUtils.readFileToString(tempFile, StandardCharsets.UTF_8);
-            executeAndLog(targetDataSource, writer, sql, false);
+    /**
+     * With more than one {@code --index-threads}, the SQL generated by Liquibase for each changeset is run by the
+     * {@link IndexBuildScheduler} instead of by Liquibase, which builds indices one at a time.
+     */
+    private void createIndices(DataSource targetDataSource, Writer writer) throws Exception {
+        if (!args.insert || args.indexThreads <= 1) {
+            executeLiquibaseWithContext(targetDataSource, writer, "createIndex");
+            return;
         }
 
-        if (args.insert) {
-            Main.run(new String[]{
-                    "--logLevel=off",
-                    String.format("--url=%s", this.args.targetDbUrl),
-                    "--changeLogFile=liquibase.xml",
-                    String.format("--username=%s", this.args.targetDbUser),
-                    String.format("--password=%s", this.args.targetDbPassword),
-                    String.format("--contexts=%s", contexts),
-                    "update"
-            });
+        String sql = liquibase(targetDataSource).sql("createIndex");
+        executeAndLog(targetDataSource, writer, sql, false);
+
+        List<IndexBuild> builds;
+        try (InputStream changeLog = getClass().getResourceAsStream("/db-migration-scripts/initial/create-index.xml")) {
+            builds = IndexBuild.parse(changeLog, sql);
         }
 
-        // because liquibase will hijack logging
-        LoggerContext lc = (LoggerContext) LoggerFactory.getILoggerFactory();
-        lc.reset();
+        LOG.info("Building {} indices and constraints using {} connections.", builds.size(), args.indexThreads);
+        new IndexBuildScheduler(targetDataSource, args.indexThreads, args.indexMemoryMb, args.indexParallelWorkers).run(builds);
+    }
 
-        new ContextInitializer(lc).autoConfig();
+    private void executeLiquibaseWithContext(DataSource targetDataSource, Writer writer, String contexts) throws Exception {
+        if (writer != null) {
+            liquibase(targetDataSource).writeSql(contexts, writer);
+        }
 
+        if (args.insert) {
+            liquibase(targetDataSource).update(contexts);
+        }
     }
 
-    private Writer writer() throws IOException {
-        if (isBlank(args.outputFile)) {
-            return null;
+    private LiquibaseSession liquibase(DataSource targetDataSource) throws Exception {
+        if (liquibase == null) {
+            liquibase = new LiquibaseSession(targetDataSource);
         }
+        return liquibase;
+    }
 
-        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(args.outputFile));
-
-        if (args.outputFile.endsWith(".gz")) {
-            return new OutputStreamWriter(new GZIPOutputStream(out));
-        } else {
-            return new OutputStreamWriter(out);
+    private void closeLiquibase() throws Exception {
+        if (liquibase != null) {
+            liquibase.close();
+            liquibase = null;
         }
     }
 
-    private void withWriter(ThrowingConsumer<Writer> consumer) throws Exception {
-        try (Writer writer = writer()) {
-            consumer.accept(writer);
+    private void withOutput(ThrowingConsumer<DumpOutput> consumer) throws Exception {
+        try (DumpOutput output = DumpOutput.open(args)) {
+            consumer.accept(output);
         }
     }
 
@@ -306,11 +582,8 @@ public class DbSync {
             case H2:
                 break; // do nothing, h2 automatically sets sequence
             case POSTGRES:
-                for (String tableName : tableNames) {
-                    String sequenceName = tableName.toLowerCase() + "_id_seq";
-                    String sql = String.format("select setval('%s', (select max(id) from %s))", sequenceName, tableName);
-
-                    executeAndLog(targetDataSource, writer, sql, args.insert);
+                if (!tableNames.isEmpty()) {
+                    executeAndLog(targetDataSource, writer, maxIds.setSequencesSql(tableNames), args.insert);
                 }
                 break;
             default:
@@ -327,95 +600,298 @@ public class DbSync {
         return dialect;
     }
 
-    @SuppressWarnings("resource")
-    private void dumpTableSQL(String table, Integer rowCount, Connection sourceConnection, DataSource targetDataSource, Writer writer, ProgressBar progressBar) throws IOException, SQLException {
-        LOG.debug("Copying {} records in table {}", rowCount, table);
-        Field<Long> idField = field("id", Long.class);
-        int maxIdInTable = using(sourceConnection).select(max(idField)).from(table).execute();
-
-        comment(writer, "dumping records for table " + table);
-        long lastIdSeen = 0L;
-        while (lastIdSeen != maxIdInTable) {
-            Result<Record> records = using(sourceConnection)
-                    .select(asterisk())
-                    .from(table)
-                    .orderBy(idField)
-                    .seek(lastIdSeen)
-                    .limit(args.batchSize)
-                    .fetch();
-
-            if (records.isEmpty()) {
-                break;
+    private long dumpTableSQL(IdRange idRange, Connection sourceConnection, DataSource targetDataSource, Writer writer, BinaryRowWriter rows, ProgressBar progressBar) throws Exception {
+        LOG.debug("Copying {} records in table {}", idRange.rowCount, idRange);
+        comment(writer, "dumping records for table " + idRange);
+        metrics.tableStarted(idRange.table);
+
+        CheckpointJournal.RangeCheckpoint checkpoint = journal.rangeCheckpoint(idRange);
+        IdRange remainingRange = idRange;
+        if (args.resume) {
+            long resumeAfterId = journal.resumeAfterId(idRange);
+            if (resumeAfterId != idRange.fromIdExclusive) {
+                maxIds.copiedPreviously(idRange.table);
             }
+            deleteUncommittedRecords(targetDataSource, idRange, resumeAfterId);
+            remainingRange = new IdRange(idRange.table, idRange.rowCount, resumeAfterId, idRange.toIdInclusive);
+        }
 
-            @SuppressWarnings("unchecked")
-            Field<Long>[] fields = (Field<Long>[]) records.fields();
+        if (args.directTransfer) {
+            return transferDirectly(idRange, remainingRange, sourceConnection, targetDataSource, progressBar, checkpoint);
+        }
 
-            Field<Long> idFieldInCurrentSourceTable = Arrays.stream(fields)
-                    .filter(field -> field.getName().equalsIgnoreCase("id"))
-                    .findFirst()
-                    .orElseThrow(() -> new RuntimeException("Unable to determine "));
+        Pipeline.SinkFactory<InsertBatch> sinks = () -> insertBatchSink(idRange.table, targetDataSource, writer, rows, progressBar, checkpoint);
+
+        long[] recordsRead = {0};
+        try (BatchReader reader = batchReader(remainingRange, sourceConnection)) {
+            Pipeline.Source<Result<Record>> batches = () -> {
+                long fetchStart = System.nanoTime();
+                BatchFetched fetched = new BatchFetched();
+                fetched.begin();
+                Result<Record> records = reader.next();
+                metrics.fetch.recordSince(fetchStart);
+                if (records != null) {
+                    fetched.commit(idRange.table, records.size(), () -> BatchReader.estimatedBytes(records));
+                    maxIds.copied(idRange.table, BatchReader.maxId(records));
+                    checkpoint.batchRead(BatchReader.lastId(records));
+                    recordsRead[0] += records.size();
+                }
+                return records;
+            };
+
+            if (args.pipeline) {
+                new Pipeline<Result<Record>, InsertBatch>(idRange.toString(), args.pipelineQueueSize, args.convertThreads, args.writeThreads, args.virtualThreads, pipelineStats)
+                        .run(batches, records -> insertBatch(idRange.table, writer, records), sinks);
+            } else {
+                try (Pipeline.Sink<InsertBatch> sink = sinks.open()) {
+                    Result<Record> records;
+                    while ((records = batches.next()) != null) {
+                        sink.accept(insertBatch(idRange.table, writer, records));
+                    }
+                }
+            }
+        }
 
-            lastIdSeen = records.get(records.size() - 1).getValue(idFieldInCurrentSourceTable);
+        checkpoint.done();
+        return recordsRead[0];
+    }
 
-            executAndLogInsertStatement(table, targetDataSource, writer, records);
-            if (progressBar != null) {
-                progressBar.stepBy(records.size());
+    /**
+     * Copies the records of a range with {@code --direct-transfer}, from the source result set straight into the table
+     * loader, without jOOQ records. Reading a batch is interleaved with loading it, so the time spent in the source
+     * driver is recorded as the fetch time, and the rest of the batch as the execute time.
+     */
+    private long transferDirectly(IdRange idRange, IdRange remainingRange, Connection sourceConnection, DataSource targetDataSource, ProgressBar progressBar, CheckpointJournal.RangeCheckpoint checkpoint) throws Exception {
+        boolean seek = args.readMode == Args.ReadMode.SEEK;
+        long recordsRead = 0;
+        List<Long> uncommittedBatches = new ArrayList<>();
+
+        targetPermits.acquire();
+        try (TableLoader loader = tableLoader(idRange.table, targetDataSource);
+             DirectTransfer transfer = new DirectTransfer(sourceConnection, remainingRange, seek, args.fetchSize, batchSizer(idRange.table, seek ? args.batchSize : args.fetchSize))) {
+            while (true) {
+                long start = System.nanoTime();
+                BatchTransferred transferred = new BatchTransferred();
+                transferred.begin();
+                SourceRows rows = transfer.nextBatch(loader);
+                if (rows == null) {
+                    break;
+                }
+                long fetchNanos = rows.batchReadNanos();
+                metrics.fetch.record(fetchNanos);
+                metrics.execute.record(System.nanoTime() - start - fetchNanos);
+                int batchRows = rows.batchRows();
+                long batchBytes = rows.batchBytes();
+                transferred.fetchTime = fetchNanos;
+                transferred.commit(idRange.table, batchRows, () -> batchBytes);
+
+                checkpoint.batchRead(rows.lastId());
+                maxIds.copied(idRange.table, rows.maxId());
+                uncommittedBatches.add(rows.lastId());
+                if (transfer.committed()) {
+                    for (long lastId : uncommittedBatches) {
+                        checkpoint.batchCommitted(lastId);
+                    }
+                    uncommittedBatches.clear();
+                }
+                metrics.batchCopied(idRange.table, batchRows, batchBytes);
+                if (progressBar != null) {
+                    progressBar.stepBy(batchRows);
+                }
+                recordsRead += batchRows;
             }
+        } finally {
+            targetPermits.release();
         }
-    }
 
-    private void executAndLogInsertStatement(String table, DataSource targetDataSource, Writer writer, Result<Record> records) throws SQLException {
-        Field<?>[] fields = records.fields();
-        InsertValuesStepN<Record> insertQuery = insertInto(table(table), fields);
+        checkpoint.done();
+        return recordsRead;
+    }
 
-        for (Record record : records) {
-            //noinspection ResultOfMethodCallIgnored
-            insertQuery.values(record.intoArray());
+    private void deleteUncommittedRecords(DataSource targetDataSource, IdRange idRange, long resumeAfterId) throws SQLException {
+        if (!args.insert) {
+            return;
         }
 
+        Field<Long> idField = field("id", Long.class);
         try (Connection connection = targetDataSource.getConnection()) {
-            String bulkInsertSql = renderer(connection).renderInlined(insertQuery);
-            executeAndLog(targetDataSource, writer, bulkInsertSql, args.insert);
+            int deleted = using(connection)
+                    .deleteFrom(table(idRange.table))
+                    .where(idField.gt(resumeAfterId))
+                    .and(idRange.upperBound(idField))
+                    .execute();
+            LOG.debug("Resuming copy of {} after id {}, deleted {} uncommitted records.", idRange, resumeAfterId, deleted);
         }
     }
 
-    private static DSLContext renderer(Connection targetConnection) {
-        Configuration targetConfiguration = using(targetConnection).configuration();
-        return using(targetConfiguration.derive(SettingsTools.clone(targetConfiguration.settings())
-                .withRenderFormatted(false)
-                .withRenderNameCase(RenderNameCase.AS_IS)
-                .withRenderQuotedNames(targetConfiguration.dialect().family() != SQLDialect.POSTGRES ? EXPLICIT_DEFAULT_QUOTED : NEVER)
-        ));
+    private BatchReader batchReader(IdRange idRange, Connection sourceConnection) throws SQLException {
+        switch (args.readMode) {
+            case SEEK:
+                return new SeekBatchReader(sourceConnection, idRange, batchSizer(idRange.table, args.batchSize));
+            case STREAM:
+                return new StreamingBatchReader(sourceConnection, idRange, args.fetchSize, batchSizer(idRange.table, args.fetchSize));
+            default:
+                throw new UnsupportedOperationException("Read mode " + args.readMode + " is not supported");
+        }
     }
 
-    @SuppressWarnings("resource")
-    private static Map<String, Integer> listTables(BasicDataSource sourceDataSource) {
-        Map<String, Integer> tables = new LinkedHashMap<>();
+    private BatchSizer batchSizer(String table, int maxBatchSize) {
+        if (!args.adaptiveBatchSize) {
+            return BatchSizer.fixed(maxBatchSize);
+        }
+        return adaptiveBatchSizers.computeIfAbsent(table, (tableName) -> new AdaptiveBatchSizer(tableName, maxBatchSize, args.maxBatchBytes));
+    }
 
-        withDataSource(sourceDataSource, (connection) -> {
-            Field<String> field = field("TABLE_NAME", String.class);
-            Result<Record1<String>> result = using(connection)
-                    .select(field)
-                    .from("INFORMATION_SCHEMA.tables")
-                    .where("table_schema in ('PUBLIC', 'public') and table_type in ('TABLE', 'BASE TABLE')")
-                    .fetch();
+    /**
+     * With {@code --insert}, each sink holds one of the {@code --target-connections} permits until it is closed.
+     */
+    private Pipeline.Sink<InsertBatch> insertBatchSink(String table, DataSource targetDataSource, Writer writer, BinaryRowWriter rows, ProgressBar progressBar, CheckpointJournal.RangeCheckpoint checkpoint) throws Exception {
+        TableLoader loader;
+        if (args.insert) {
+            targetPermits.acquire();
+        }
+        try {
+            loader = tableLoader(table, targetDataSource);
+        } catch (Exception e) {
+            if (args.insert) {
+                targetPermits.release();
+            }
+            throw e;
+        }
+        List<Long> uncommittedBatches = new ArrayList<>();
+
+        return new Pipeline.Sink<>() {
+            @Override
+            public void accept(InsertBatch batch) throws Exception {
+                if (batch.inlinedSql != null && writer != null) {
+                    long writeStart = System.nanoTime();
+                    executeAndLog(targetDataSource, writer, batch.inlinedSql, false);
+                    metrics.write.recordSince(writeStart);
+                }
+                if (batch.inlinedSql != null && args.insert && loader == null) {
+                    long executeStart = System.nanoTime();
+                    BatchExecuted executed = new BatchExecuted();
+                    executed.begin();
+                    executeAndLog(targetDataSource, null, batch.inlinedSql, true);
+                    metrics.execute.recordSince(executeStart);
+                    executed.commit(table, batch.records.size(), batch.inlinedSql::length);
+                }
+                if (rows != null) {
+                    long writeStart = System.nanoTime();
+                    rows.write(batch.records);
+                    metrics.write.recordSince(writeStart);
+                }
 
-            for (Record1<String> record : result) {
-                String tableName = record.getValue(field);
+                uncommittedBatches.add(BatchReader.lastId(batch.records));
+                boolean committed = true;
+                if (loader != null) {
+                    long executeStart = System.nanoTime();
+                    BatchExecuted executed = new BatchExecuted();
+                    executed.begin();
+                    committed = loader.load(batch.records);
+                    metrics.execute.recordSince(executeStart);
+                    executed.commit(table, batch.records.size(), () -> BatchReader.estimatedBytes(batch.records));
+                }
+                if (committed) {
+                    for (long lastId : uncommittedBatches) {
+                        checkpoint.batchCommitted(lastId);
+                    }
+                    uncommittedBatches.clear();
+                }
+                metrics.batchCopied(table, batch.records.size(), BatchReader.estimatedBytes(batch.records));
+                if (progressBar != null) {
+                    progressBar.stepBy(batch.records.size());
+                }
+            }
 
-                if (!isChangeLogTable(tableName)) {
-                    tables.put(tableName, using(connection).fetchCount(table(tableName)));
+            @Override
+            public void close() throws Exception {
+                try {
+                    if (loader != null) {
+                        loader.close();
+                    }
+                } finally {
+                    if (args.insert) {
+                        targetPermits.release();
+                    }
                 }
             }
-        });
+        };
+    }
+
+    private TableLoader tableLoader(String table, DataSource targetDataSource) throws SQLException {
+        if (!args.insert) {
+            return null;
+        }
+
+        switch (args.loadMode) {
+            case INSERT:
+                return null; // records are inserted using the inlined SQL that is also written to the output
+            case BATCH:
+                return new BatchInsertLoader(table, bulkLoadSession(targetDataSource, 1));
+            case COPY:
+                return new PostgresCopyLoader(table, bulkLoadSession(targetDataSource, 0));
+            default:
+                throw new UnsupportedOperationException("Load mode " + args.loadMode + " is not supported");
+        }
+    }
+
+    private BulkLoadSession bulkLoadSession(DataSource targetDataSource, int defaultCommitEveryBatches) throws SQLException {
+        long waitStart = System.nanoTime();
+        ConnectionAcquired connectionAcquired = new ConnectionAcquired();
+        connectionAcquired.begin();
+        BulkLoadSession session = new BulkLoadSession(targetDataSource, bulkLoadProfile, args.commitEvery > 0 ? args.commitEvery : defaultCommitEveryBatches);
+        metrics.poolWait.recordSince(waitStart);
+        connectionAcquired.pool = "target";
+        connectionAcquired.commit();
+        return session;
+    }
+
+    private InsertBatch insertBatch(String table, Writer writer, Result<Record> records) {
+        if (writer == null && !(args.insert && args.loadMode == Args.LoadMode.INSERT)) {
+            return new InsertBatch(records, null);
+        }
+
+        long renderStart = System.nanoTime();
+        BatchRendered rendered = new BatchRendered();
+        rendered.begin();
+        Field<?>[] fields = records.fields();
+        InsertValuesStepN<Record> insertQuery = insertInto(table(table), fields);
 
-        return tables;
+        for (Record record : records) {
+            //noinspection ResultOfMethodCallIgnored
+            insertQuery.values(record.intoArray());
+        }
+
+        String inlinedSql = inlineRenderer.renderInlined(insertQuery);
+        metrics.render.recordSince(renderStart);
+        rendered.commit(table, records.size(), inlinedSql::length);
+        return new InsertBatch(records, inlinedSql);
+    }
+
+    static DSLContext renderer(Connection targetConnection) {
+        return renderer(using(targetConnection).dialect());
     }
 
-    private static boolean isChangeLogTable(String tableName) {
-        return tableName.equalsIgnoreCase("CHANGELOG") ||
-                tableName.equalsIgnoreCase("DATABASECHANGELOG") ||
-                tableName.equalsIgnoreCase("DATABASECHANGELOGLOCK");
+    /**
+     * Rendering does not need a connection to the target database, only its dialect, so a single renderer is shared by
+     * all batches.
+     */
+    static DSLContext renderer(SQLDialect dialect) {
+        return using(dialect, SettingsTools.defaultSettings()
+                .withRenderFormatted(false)
+                .withRenderNameCase(RenderNameCase.AS_IS)
+                .withRenderQuotedNames(dialect.family() != SQLDialect.POSTGRES ? EXPLICIT_DEFAULT_QUOTED : NEVER)
+        );
+    }
+
+    private static class InsertBatch {
+        final Result<Record> records;
+        final String inlinedSql;
+
+        InsertBatch(Result<Record> records, String inlinedSql) {
+            this.records = records;
+            this.inlinedSql = inlinedSql;
+        }
     }
 }
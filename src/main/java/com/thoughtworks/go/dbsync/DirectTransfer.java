@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.sql.*;
+
+/**
+ * Transfers the records of an {@link IdRange} from the source {@link ResultSet} straight into a {@link TableLoader},
+ * one batch at a time, without building jOOQ records, for {@code --direct-transfer}. With {@code seek}, every batch is
+ * a query for the next {@code batchSize} records after the last id seen, with {@code stream}, all batches are read from
+ * a single query, like {@link SeekBatchReader} and {@link StreamingBatchReader} do.
+ */
+class DirectTransfer implements AutoCloseable {
+    private final Connection sourceConnection;
+    private final IdRange idRange;
+    private final boolean seek;
+    private final BatchSizer batchSizer;
+    private final boolean autoCommit;
+    private final PreparedStatement statement;
+    private ResultSet resultSet;
+    private SourceRows rows;
+    private long lastIdSeen;
+    private boolean exhausted;
+    private boolean committed;
+
+    DirectTransfer(Connection sourceConnection, IdRange idRange, boolean seek, int fetchSize, BatchSizer batchSizer) throws SQLException {
+        this.sourceConnection = sourceConnection;
+        this.idRange = idRange;
+        this.seek = seek;
+        this.batchSizer = batchSizer;
+        this.autoCommit = sourceConnection.getAutoCommit();
+        this.lastIdSeen = idRange.fromIdExclusive;
+
+        String sql = "SELECT * FROM " + idRange.table + " WHERE id > ?" + (idRange.toIdInclusive == null ? "" : " AND id <= ?") + " ORDER BY id" + (seek ? " LIMIT ?" : "");
+        statement = sourceConnection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (!seek) {
+            String url = sourceConnection.getMetaData().getURL();
+            if (url.startsWith("jdbc:postgresql:")) {
+                // PgJDBC only fetches rows using a cursor outside of auto-commit mode, otherwise it reads the entire result
+                sourceConnection.setAutoCommit(false);
+            }
+            // Connector/J only streams rows one at a time when the fetch size is Integer.MIN_VALUE
+            statement.setFetchSize(url.startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : fetchSize);
+        }
+    }
+
+    /**
+     * Loads the next batch of records into {@code loader}.
+     *
+     * @return the rows of the batch, or {@code null} when there are no records left. The rows are reused for the next
+     * batch.
+     */
+    SourceRows nextBatch(TableLoader loader) throws Exception {
+        if (exhausted) {
+            return null;
+        }
+
+        int batchSize = batchSizer.nextBatchSize();
+        long queryNanos = 0;
+        if (resultSet == null || seek) {
+            long queryStart = System.nanoTime();
+            query(batchSize);
+            queryNanos = System.nanoTime() - queryStart;
+        }
+
+        long start = System.nanoTime();
+        rows.startBatch(queryNanos);
+        committed = loader.load(rows, batchSize);
+        if (rows.batchRows() == 0) {
+            exhausted = true;
+            return null;
+        }
+        if (batchSizer.measuresBatches()) {
+            batchSizer.batchCompleted(rows.batchRows(), rows.batchBytes(), System.nanoTime() - start);
+        }
+
+        lastIdSeen = rows.lastId();
+        exhausted = seek && rows.batchRows() < batchSize;
+        return rows;
+    }
+
+    /**
+     * @return whether the records loaded so far are committed on the target, see {@link TableLoader#load(SourceRows, int)}.
+     */
+    boolean committed() {
+        return committed;
+    }
+
+    private void query(int batchSize) throws SQLException {
+        if (resultSet != null) {
+            resultSet.close();
+        }
+
+        int parameter = 1;
+        statement.setLong(parameter++, lastIdSeen);
+        if (idRange.toIdInclusive != null) {
+            statement.setLong(parameter++, idRange.toIdInclusive);
+        }
+        if (seek) {
+            statement.setInt(parameter, batchSize);
+        }
+        resultSet = statement.executeQuery();
+
+        if (rows == null) {
+            rows = new SourceRows(resultSet.getMetaData());
+        }
+        rows.readFrom(resultSet);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.close();
+        } finally {
+            if (sourceConnection.getAutoCommit() != autoCommit) {
+                sourceConnection.rollback();
+                sourceConnection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.thoughtworks.go.dbsync.cli.Args;
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static org.jooq.tools.StringUtils.isBlank;
+
+/**
+ * Where the SQL statements of a run are written. With {@code --output}, all phases and table workers share a single
+ * writer. With {@code --output-dir}, every phase and every id range is written to its own file, in parallel, and a
+ * {@code manifest.json} lists the files with their id ranges, record counts and SHA-256 checksums. Without either,
+ * statements are not written, and the writer handed out is {@code null}. With {@code --output-format=binary}, records
+ * of id ranges are written by a {@link BinaryRowWriter} rather than as SQL statements.
+ */
+class DumpOutput implements AutoCloseable {
+    static final String MANIFEST_FILE = "manifest.json";
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Writer sharedWriter;
+    private final File directory;
+    private final Args.OutputCompression compression;
+    private final Args.OutputFormat format;
+    private final List<DumpFile> phaseFiles = Collections.synchronizedList(new ArrayList<>());
+    private final List<DumpFile> rangeFiles = Collections.synchronizedList(new ArrayList<>());
+
+    private DumpOutput(Writer sharedWriter, File directory, Args.OutputCompression compression, Args.OutputFormat format) {
+        this.sharedWriter = sharedWriter;
+        this.directory = directory;
+        this.compression = compression;
+        this.format = format;
+    }
+
+    static DumpOutput open(Args args) throws IOException {
+        if (!isBlank(args.outputDir)) {
+            File directory = new File(args.outputDir);
+            FileUtils.forceMkdir(new File(directory, "data"));
+            return new DumpOutput(null, directory, args.outputCompression, args.outputFormat);
+        }
+
+        if (isBlank(args.outputFile)) {
+            return new DumpOutput(null, null, null, Args.OutputFormat.SQL);
+        }
+
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(args.outputFile), OUTPUT_BUFFER_SIZE);
+
+        if (args.outputFile.endsWith(".gz")) {
+            return new DumpOutput(new OutputStreamWriter(new ParallelGzipOutputStream(out, args.compressionThreads), StandardCharsets.UTF_8), null, null, Args.OutputFormat.SQL);
+        } else if (args.outputFile.endsWith(".zst")) {
+            return new DumpOutput(new OutputStreamWriter(new ZstdOutputStream(out).setWorkers(args.compressionThreads), StandardCharsets.UTF_8), null, null, Args.OutputFormat.SQL);
+        } else {
+            return new DumpOutput(new OutputStreamWriter(out, StandardCharsets.UTF_8), null, null, Args.OutputFormat.SQL);
+        }
+    }
+
+    void withPhaseWriter(String phase, ThrowingConsumer<Writer> consumer) throws Exception {
+        if (directory == null) {
+            // marks where the phase starts, for the replay of the dump
+            Util.comment(sharedWriter, "phase " + phase);
+            consumer.accept(sharedWriter);
+            return;
+        }
+
+        DumpFile dumpFile = new DumpFile(phase, phase + ".sql" + compression.extension);
+        dumpFile.write((writer, rows) -> {
+            consumer.accept(writer);
+            return 0;
+        });
+        phaseFiles.add(dumpFile);
+    }
+
+    void withRangeWriter(IdRange idRange, RangeDump dump) throws Exception {
+        if (directory == null) {
+            dump.dump(sharedWriter, null);
+            return;
+        }
+
+        String toId = idRange.toIdInclusive == null ? "end" : Long.toString(idRange.toIdInclusive);
+        DumpFile dumpFile = new DumpFile(idRange.table, "data/" + idRange.table + "." + (idRange.fromIdExclusive + 1) + "-" + toId + format.extension + compression.extension);
+        dumpFile.idRange = idRange;
+        dumpFile.write(dump);
+        rangeFiles.add(dumpFile);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sharedWriter != null) {
+            sharedWriter.close();
+        }
+        if (directory != null) {
+            FileUtils.writeStringToFile(new File(directory, MANIFEST_FILE), manifest(), StandardCharsets.UTF_8);
+            LOG.info("Wrote {} phase files and {} record files, listed in {}.", phaseFiles.size(), rangeFiles.size(), new File(directory, MANIFEST_FILE));
+        }
+    }
+
+    private String manifest() {
+        Map<String, List<DumpFile>> filesByTable = new TreeMap<>();
+        synchronized (rangeFiles) {
+            for (DumpFile rangeFile : rangeFiles) {
+                filesByTable.computeIfAbsent(rangeFile.name, (table) -> new ArrayList<>()).add(rangeFile);
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"compression\": ").append(jsonString(compression.name().toLowerCase())).append(",\n");
+        json.append("  \"format\": ").append(jsonString(format.name().toLowerCase())).append(",\n");
+        json.append("  \"phases\": [");
+        synchronized (phaseFiles) {
+            for (int i = 0; i < phaseFiles.size(); i++) {
+                DumpFile phaseFile = phaseFiles.get(i);
+                json.append(i == 0 ? "\n" : ",\n")
+                        .append("    {\"name\": ").append(jsonString(phaseFile.name))
+                        .append(", \"file\": ").append(jsonString(phaseFile.path))
+                        .append(", \"sha256\": ").append(jsonString(phaseFile.sha256))
+                        .append("}");
+            }
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"tables\": [");
+        int tableIndex = 0;
+        for (Map.Entry<String, List<DumpFile>> table : filesByTable.entrySet()) {
+            List<DumpFile> files = table.getValue();
+            files.sort(Comparator.comparingLong(file -> file.idRange.fromIdExclusive));
+
+            json.append(tableIndex++ == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": ").append(jsonString(table.getKey()))
+                    .append(", \"records\": ").append(files.stream().mapToLong(file -> file.records).sum())
+                    .append(", \"ranges\": [");
+            for (int i = 0; i < files.size(); i++) {
+                DumpFile file = files.get(i);
+                json.append(i == 0 ? "\n" : ",\n")
+                        .append("      {\"fromIdExclusive\": ").append(file.idRange.fromIdExclusive)
+                        .append(", \"toIdInclusive\": ").append(file.idRange.toIdInclusive)
+                        .append(", \"records\": ").append(file.records)
+                        .append(", \"file\": ").append(jsonString(file.path))
+                        .append(", \"sha256\": ").append(jsonString(file.sha256))
+                        .append("}");
+            }
+            json.append("\n    ]}");
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    static String jsonString(String value) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Writes the records of an id range, either as statements to the writer, or as binary rows when the writer is
+     * {@code null}, and returns the number of records written.
+     */
+    interface RangeDump {
+        long dump(Writer writer, BinaryRowWriter rows) throws Exception;
+    }
+
+    private class DumpFile {
+        final String name;
+        final String path;
+        IdRange idRange;
+        long records;
+        String sha256;
+
+        DumpFile(String name, String path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        void write(RangeDump dump) throws Exception {
+            MessageDigest digest = sha256();
+            OutputStream out = compressed(new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(new File(directory, path)), digest), OUTPUT_BUFFER_SIZE));
+            if (idRange != null && format == Args.OutputFormat.BINARY) {
+                try (OutputStream ignored = out; BinaryRowWriter rows = new BinaryRowWriter(out, idRange.table)) {
+                    records = dump.dump(null, rows);
+                }
+            } else {
+                try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                    records = dump.dump(writer, null);
+                }
+            }
+            sha256 = HexFormat.of().formatHex(digest.digest());
+        }
+
+        /**
+         * Files are written in parallel, so each file is compressed using a single thread.
+         */
+        private OutputStream compressed(OutputStream out) throws IOException {
+            switch (compression) {
+                case GZIP:
+                    return new GZIPOutputStream(out, OUTPUT_BUFFER_SIZE);
+                case ZSTD:
+                    return new ZstdOutputStream(out);
+                default:
+                    return out;
+            }
+        }
+
+        private MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.thoughtworks.go.dbsync.cli.Args;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SQLDialect;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static org.jooq.impl.DSL.using;
+
+/**
+ * Loads a dump written by {@code --output} or {@code --output-dir} into the target database. Statements that insert
+ * records run concurrently on {@code threads} connections, while every other statement runs on its own, after all
+ * statements before it completed, which keeps the schema, records, sequences and indices phases in order. Records
+ * written with {@code --output-format=binary} are loaded using a {@link BatchInsertLoader}.
+ */
+class DumpReplayer {
+    private static final Pattern MANIFEST_FILE = Pattern.compile("\"file\": \"([^\"]+)\", \"sha256\": \"([0-9a-f]+)\"");
+    private static final List<String> PHASES_BEFORE_RECORDS = List.of("createSchema", "createView");
+    private static final int BINARY_ROWS_PER_BATCH = 1_000;
+
+    private final DataSource targetDataSource;
+    private final int threads;
+    private final AtomicLong statementsExecuted = new AtomicLong();
+    private final AtomicLong rowsLoaded = new AtomicLong();
+    private BulkLoadProfile bulkLoadProfile;
+
+    DumpReplayer(DataSource targetDataSource, int threads) {
+        this.targetDataSource = targetDataSource;
+        this.threads = threads;
+    }
+
+    void replay(File dump) throws Exception {
+        long startTime = System.currentTimeMillis();
+        if (dump.isDirectory()) {
+            replayDirectory(dump);
+        } else {
+            replayFile(dump);
+        }
+        LOG.info("Executed {} statements and loaded {} binary rows from {} in {}s.", statementsExecuted.get(), rowsLoaded.get(), dump, (System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    /**
+     * In a single dump file, records are in sections that start with a {@code dumping records for table} comment, and
+     * end with the comment starting the next phase.
+     */
+    private void replayFile(File file) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int maxPendingStatements = 2 * threads;
+        Semaphore permits = new Semaphore(maxPendingStatements);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        boolean inRecords = false;
+
+        try (Connection connection = targetDataSource.getConnection();
+             SqlStatementReader reader = new SqlStatementReader(new InputStreamReader(open(file), StandardCharsets.UTF_8))) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                if (statement.startsWith("--")) {
+                    if (statement.contains("dumping records for table")) {
+                        inRecords = true;
+                    } else if (statement.contains("-- phase ") || statement.contains("Setting sequences")) {
+                        awaitAll(permits, maxPendingStatements, failure);
+                        inRecords = false;
+                    }
+                    continue;
+                }
+
+                if (inRecords) {
+                    String sql = statement;
+                    permits.acquire();
+                    if (failure.get() != null) {
+                        throw failure.get();
+                    }
+                    executor.execute(() -> {
+                        try (Connection recordsConnection = targetDataSource.getConnection()) {
+                            execute(recordsConnection, sql);
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } else {
+                    awaitAll(permits, maxPendingStatements, failure);
+                    execute(connection, statement);
+                }
+            }
+            awaitAll(permits, maxPendingStatements, failure);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A sharded dump is verified against the checksums in its manifest before anything is loaded. Each id range file is
+     * then loaded by a single thread, with up to {@code threads} files at once.
+     */
+    private void replayDirectory(File directory) throws Exception {
+        try (Connection connection = targetDataSource.getConnection()) {
+            bulkLoadProfile = new BulkLoadProfile(targetDataSource, using(connection).dialect(), false, false);
+        }
+
+        List<String> manifest = Files.readAllLines(new File(directory, DumpOutput.MANIFEST_FILE).toPath(), StandardCharsets.UTF_8);
+        List<File> phasesBeforeRecords = new ArrayList<>();
+        List<File> recordFiles = new ArrayList<>();
+        List<File> phasesAfterRecords = new ArrayList<>();
+
+        for (String line : manifest) {
+            Matcher matcher = MANIFEST_FILE.matcher(line);
+            if (!matcher.find()) {
+                continue;
+            }
+
+            File file = new File(directory, matcher.group(1));
+            verifyChecksum(file, matcher.group(2));
+
+            if (line.contains("fromIdExclusive")) {
+                recordFiles.add(file);
+            } else if (PHASES_BEFORE_RECORDS.stream().anyMatch(phase -> matcher.group(1).startsWith(phase + "."))) {
+                phasesBeforeRecords.add(file);
+            } else {
+                phasesAfterRecords.add(file);
+            }
+        }
+
+        for (File file : phasesBeforeRecords) {
+            replayStatements(file);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File file : recordFiles) {
+                futures.add(executor.submit(() -> {
+                    if (file.getName().contains(Args.OutputFormat.BINARY.extension)) {
+                        replayRows(file);
+                    } else {
+                        replayStatements(file);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (File file : phasesAfterRecords) {
+            replayStatements(file);
+        }
+    }
+
+    private void replayStatements(File file) throws Exception {
+        LOG.debug("Loading {}", file);
+        try (Connection connection = targetDataSource.getConnection();
+             SqlStatementReader reader = new SqlStatementReader(new InputStreamReader(open(file), StandardCharsets.UTF_8))) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                if (!statement.startsWith("--")) {
+                    execute(connection, statement);
+                }
+            }
+        }
+        LOG.info("Loaded {}", file.getName());
+    }
+
+    private void replayRows(File file) throws Exception {
+        LOG.debug("Loading {}", file);
+        DSLContext records = using(SQLDialect.DEFAULT);
+        try (BinaryRowReader reader = new BinaryRowReader(open(file));
+             TableLoader loader = new BatchInsertLoader(reader.table(), new BulkLoadSession(targetDataSource, bulkLoadProfile, 1))) {
+            Field<?>[] fields = reader.fields();
+            Result<Record> batch = records.newResult(fields);
+
+            Object[] values;
+            while ((values = reader.next()) != null) {
+                Record record = records.newRecord(fields);
+                record.fromArray(values);
+                batch.add(record);
+
+                if (batch.size() == BINARY_ROWS_PER_BATCH) {
+                    loader.load(batch);
+                    rowsLoaded.addAndGet(batch.size());
+                    batch = records.newResult(fields);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                loader.load(batch);
+                rowsLoaded.addAndGet(batch.size());
+            }
+        }
+        LOG.info("Loaded {}", file.getName());
+    }
+
+    private void verifyChecksum(File file, String expectedSha256) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(file)), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (!sha256.equals(expectedSha256)) {
+            throw new RuntimeException(String.format("Checksum of %s is %s, but the manifest lists %s", file, sha256, expectedSha256));
+        }
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1024 * 1024);
+        if (file.getName().endsWith(".gz")) {
+            return new GZIPInputStream(in, 64 * 1024);
+        } else if (file.getName().endsWith(".zst")) {
+            return new ZstdInputStream(in);
+        } else {
+            return in;
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+        statementsExecuted.incrementAndGet();
+    }
+
+    private static void awaitAll(Semaphore permits, int maxPendingStatements, AtomicReference<Exception> failure) throws Exception {
+        permits.acquire(maxPendingStatements);
+        permits.release(maxPendingStatements);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Condition;
+import org.jooq.Field;
+
+import static org.jooq.impl.DSL.noCondition;
+
+/**
+ * A contiguous range of ids {@code (fromIdExclusive, toIdInclusive]} in a table, that is copied by a single worker.
+ * A {@code null} upper bound means that the range extends to the last record in the table.
+ */
+class IdRange {
+    final String table;
+    final long rowCount;
+    final long fromIdExclusive;
+    final Long toIdInclusive;
+
+    IdRange(String table, long rowCount, long fromIdExclusive, Long toIdInclusive) {
+        this.table = table;
+        this.rowCount = rowCount;
+        this.fromIdExclusive = fromIdExclusive;
+        this.toIdInclusive = toIdInclusive;
+    }
+
+    static IdRange wholeTable(String table, long rowCount) {
+        return new IdRange(table, rowCount, 0L, null);
+    }
+
+    Condition upperBound(Field<Long> idField) {
+        return toIdInclusive == null ? noCondition() : idField.le(toIdInclusive);
+    }
+
+    @Override
+    public String toString() {
+        if (toIdInclusive == null && fromIdExclusive == 0L) {
+            return table;
+        }
+        return String.format("%s (id > %d%s)", table, fromIdExclusive, toIdInclusive == null ? "" : " and id <= " + toIdInclusive);
+    }
+}
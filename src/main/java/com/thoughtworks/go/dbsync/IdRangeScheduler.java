@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Hands out id ranges to worker threads, longest job first, so that the largest tables do not start last and keep a
+ * single thread busy long after the others went idle. The cost of a range is its number of records times the estimated
+ * size of a record. Once ranges complete, costs are converted to time using the throughput observed for each table, or
+ * across all tables for tables that have no completed range yet, so that the remaining ranges of tables that turn out
+ * slower than their size suggests move up the queue.
+ * <p>
+ * After every completed range, the remaining work is laid out over the worker threads to predict when each table will
+ * be complete. The first such prediction is kept for each table, and is reported next to the actual completion time.
+ */
+class IdRangeScheduler {
+    private static final long ROW_OVERHEAD_BYTES = 32;
+    private static final long DEFAULT_ROW_BYTES = 256;
+
+    private final int threads;
+    private final Map<String, Long> rowBytes;
+    private final List<IdRange> pending;
+    private final Map<IdRange, Long> running = new IdentityHashMap<>();
+    private final Map<String, Integer> unfinishedRanges = new HashMap<>();
+    private final Map<String, double[]> tableCostAndNanos = new HashMap<>();
+    private final Map<String, Long> predictedCompletionNanos = new HashMap<>();
+    private final Map<String, Long> actualCompletionNanos = new LinkedHashMap<>();
+    private final long startNanos = System.nanoTime();
+    private double completedCost;
+    private double completedNanos;
+
+    IdRangeScheduler(List<IdRange> idRanges, Map<String, Long> rowBytes, int threads) {
+        this.threads = threads;
+        this.rowBytes = rowBytes;
+        this.pending = new ArrayList<>(idRanges);
+        for (IdRange idRange : idRanges) {
+            unfinishedRanges.merge(idRange.table, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @return the range that is expected to take longest, or {@code null} once all ranges were handed out.
+     */
+    synchronized IdRange next() {
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        IdRange longest = Collections.max(pending, Comparator.comparingDouble(this::expectedNanos));
+        pending.remove(longest);
+        running.put(longest, System.nanoTime());
+        return longest;
+    }
+
+    synchronized void completed(IdRange idRange) {
+        long now = System.nanoTime();
+        long nanos = now - running.remove(idRange);
+
+        double cost = cost(idRange);
+        completedCost += cost;
+        completedNanos += nanos;
+        double[] table = tableCostAndNanos.computeIfAbsent(idRange.table, (name) -> new double[2]);
+        table[0] += cost;
+        table[1] += nanos;
+
+        if (unfinishedRanges.merge(idRange.table, -1, Integer::sum) == 0) {
+            actualCompletionNanos.put(idRange.table, now - startNanos);
+        }
+
+        predictCompletion(now);
+    }
+
+    /**
+     * @return the predicted and actual completion time of each table, in milliseconds since the scheduler was created.
+     * The prediction is -1 for tables that completed before any prediction could be made.
+     */
+    synchronized Map<String, long[]> completionMillis() {
+        Map<String, long[]> completion = new LinkedHashMap<>();
+        actualCompletionNanos.forEach((table, actualNanos) -> completion.put(table, new long[]{
+                predictedCompletionNanos.containsKey(table) ? TimeUnit.NANOSECONDS.toMillis(predictedCompletionNanos.get(table)) : -1,
+                TimeUnit.NANOSECONDS.toMillis(actualNanos)
+        }));
+        return completion;
+    }
+
+    void logCompletion() {
+        LOG.info("Completion time of tables, predicted vs actual:");
+        completionMillis().forEach((table, millis) -> LOG.info("  {}: {} vs {}",
+                table, millis[0] < 0 ? "not predicted" : duration(millis[0]), duration(millis[1])));
+    }
+
+    long cost(IdRange idRange) {
+        return idRange.rowCount * (rowBytes.getOrDefault(idRange.table, DEFAULT_ROW_BYTES) + ROW_OVERHEAD_BYTES);
+    }
+
+    private double expectedNanos(IdRange idRange) {
+        return cost(idRange) * nanosPerCost(idRange.table);
+    }
+
+    private double nanosPerCost(String table) {
+        double[] observed = tableCostAndNanos.get(table);
+        if (observed != null && observed[0] > 0) {
+            return observed[1] / observed[0];
+        }
+        return completedCost > 0 ? completedNanos / completedCost : 1;
+    }
+
+    /**
+     * Lays out the running and pending ranges over the worker threads in the order they are handed out, and keeps the
+     * first predicted completion time of each table.
+     */
+    private void predictCompletion(long now) {
+        PriorityQueue<Long> threadsFreeAt = new PriorityQueue<>();
+        Map<String, Long> tableCompletion = new HashMap<>();
+
+        running.forEach((idRange, startedAt) -> {
+            long end = Math.max(now, startedAt + (long) expectedNanos(idRange));
+            threadsFreeAt.add(end);
+            tableCompletion.merge(idRange.table, end, Math::max);
+        });
+        while (threadsFreeAt.size() < threads) {
+            threadsFreeAt.add(now);
+        }
+
+        List<IdRange> queue = new ArrayList<>(pending);
+        queue.sort(Comparator.comparingDouble(this::expectedNanos).reversed());
+        for (IdRange idRange : queue) {
+            long end = threadsFreeAt.poll() + (long) expectedNanos(idRange);
+            threadsFreeAt.add(end);
+            tableCompletion.merge(idRange.table, end, Math::max);
+        }
+
+        tableCompletion.forEach((table, end) -> predictedCompletionNanos.putIfAbsent(table, end - startNanos));
+    }
+
+    private static String duration(long millis) {
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+        return seconds >= 60 ? String.format("%dm%02ds", seconds / 60, seconds % 60) : String.format("%.1fs", millis / 1000.0);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record2;
+import org.jooq.SQLDialect;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Splits large tables into id ranges of roughly equal number of records, so that a single large table can be copied
+ * by several workers. Ranges are computed from {@code MIN(id)} and {@code MAX(id)} when ids are dense, and from
+ * quantiles of the ids when there are large gaps between them. On PostgreSQL the quantiles are taken from a
+ * {@code TABLESAMPLE} of the table, elsewhere, or when the sample is too small, from a full scan of the ids.
+ * <p>
+ * The number of records is an estimate from the catalog, which may be stale, so a table may turn out to be empty.
+ */
+class IdRangeSplitter {
+    private static final Field<Long> ID = field("id", Long.class);
+    private static final int SAMPLES_PER_RANGE = 100;
+    private static final int MIN_SAMPLES_PER_RANGE = 10;
+
+    private final long maxRowsPerRange;
+
+    IdRangeSplitter(long maxRowsPerRange) {
+        this.maxRowsPerRange = maxRowsPerRange;
+    }
+
+    List<IdRange> split(Connection connection, String table, long rowCount) {
+        if (maxRowsPerRange <= 0 || rowCount <= maxRowsPerRange) {
+            return List.of(IdRange.wholeTable(table, rowCount));
+        }
+
+        Record2<Long, Long> minMax = using(connection).select(min(ID), max(ID)).from(table).fetchOne();
+        if (minMax == null || minMax.value1() == null || minMax.value2() == null) {
+            LOG.debug("Table {} is estimated to have {} records, but is empty", table, rowCount);
+            return List.of(IdRange.wholeTable(table, rowCount));
+        }
+        long minId = minMax.value1();
+        long maxId = minMax.value2();
+        int rangeCount = (int) ((rowCount + maxRowsPerRange - 1) / maxRowsPerRange);
+
+        List<Long> upperBounds;
+        if (maxId - minId + 1 > 2 * rowCount) {
+            LOG.debug("Ids in table {} are sparse, splitting using quantiles of the ids", table);
+            upperBounds = quantileBounds(connection, table, rowCount, rangeCount);
+        } else {
+            upperBounds = equalWidthBounds(minId, maxId, rangeCount);
+        }
+
+        List<IdRange> ranges = new ArrayList<>();
+        long fromIdExclusive = minId - 1;
+        for (int i = 0; i < upperBounds.size(); i++) {
+            Long toIdInclusive = i == upperBounds.size() - 1 ? null : upperBounds.get(i);
+            ranges.add(new IdRange(table, rowCount / upperBounds.size(), fromIdExclusive, toIdInclusive));
+            if (toIdInclusive != null) {
+                fromIdExclusive = toIdInclusive;
+            }
+        }
+
+        LOG.debug("Split table {} with {} records into {} id ranges", table, rowCount, ranges.size());
+        return ranges;
+    }
+
+    static List<Long> equalWidthBounds(long minId, long maxId, int rangeCount) {
+        long width = Math.max(1, (maxId - minId + rangeCount) / rangeCount);
+        List<Long> bounds = new ArrayList<>();
+        for (long upper = minId - 1 + width; upper < maxId; upper += width) {
+            bounds.add(upper);
+        }
+        bounds.add(maxId);
+        return bounds;
+    }
+
+    private static List<Long> quantileBounds(Connection connection, String table, long rowCount, int rangeCount) {
+        if (using(connection).dialect().family() == SQLDialect.POSTGRES) {
+            double percent = Math.min(100.0, 100.0 * SAMPLES_PER_RANGE * rangeCount / rowCount);
+            List<Long> sampledIds = using(connection)
+                    .resultQuery(String.format(Locale.ROOT, "SELECT id FROM %s TABLESAMPLE SYSTEM (%.6f) ORDER BY id", table, percent))
+                    .fetch(0, Long.class);
+            if (sampledIds.size() >= MIN_SAMPLES_PER_RANGE * rangeCount) {
+                return quantiles(sampledIds, rangeCount);
+            }
+            LOG.debug("Sample of table {} has only {} ids, scanning all ids instead", table, sampledIds.size());
+        }
+        return scannedQuantiles(connection, table, rowCount / rangeCount, rangeCount);
+    }
+
+    /**
+     * @return the upper bounds of {@code rangeCount} ranges with about the same number of the given ids, which are
+     * sorted. The last range is unbounded, and picks up any records after the last id.
+     */
+    static List<Long> quantiles(List<Long> sortedIds, int rangeCount) {
+        List<Long> bounds = new ArrayList<>();
+        for (int i = 1; i < rangeCount; i++) {
+            long bound = sortedIds.get((int) ((long) i * sortedIds.size() / rangeCount) - 1);
+            if (bounds.isEmpty() || bound > bounds.get(bounds.size() - 1)) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add(Long.MAX_VALUE);
+        return bounds;
+    }
+
+    /**
+     * Numbers every id of the table using {@code ROW_NUMBER()}, which is a full scan of the ids, to find every
+     * {@code rowsPerRange}-th id.
+     */
+    private static List<Long> scannedQuantiles(Connection connection, String table, long rowsPerRange, int rangeCount) {
+        Field<Integer> rowNumber = field(name("rn"), Integer.class);
+        List<Long> sampledIds = using(connection)
+                .select(ID)
+                .from(select(ID, rowNumber().over(orderBy(ID)).as(rowNumber)).from(table).asTable("numbered"))
+                .where(rowNumber.mod(rowsPerRange).eq(0))
+                .orderBy(ID)
+                .fetch(ID);
+        List<Long> bounds = new ArrayList<>(sampledIds.subList(0, Math.min(sampledIds.size(), rangeCount - 1)));
+
+        // the last range is unbounded, and picks up any records after the last sampled id
+        bounds.add(Long.MAX_VALUE);
+        return bounds;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * A changeset of the {@code createIndex} context, with the statements that Liquibase generated for it (including the
+ * insert into {@code DATABASECHANGELOG}) and the tables that it builds on.
+ */
+class IndexBuild {
+    private static final String CHANGESET_HEADER = "-- Changeset ";
+    private static final String RELEASE_LOCK_HEADER = "-- Release Database Lock";
+
+    final String changeSetId;
+    final String description;
+    final boolean foreignKey;
+    final Set<String> tables;
+    final List<String> statements;
+
+    IndexBuild(String changeSetId, String description, boolean foreignKey, Set<String> tables, List<String> statements) {
+        this.changeSetId = changeSetId;
+        this.description = description;
+        this.foreignKey = foreignKey;
+        this.tables = tables;
+        this.statements = statements;
+    }
+
+    /**
+     * Matches the changesets in the change log with their statements in the output of Liquibase {@code updateSQL}.
+     * Changesets that have no statements were already applied, and are left out.
+     */
+    static List<IndexBuild> parse(InputStream changeLog, String updateSql) throws Exception {
+        Map<String, List<String>> statementsByChangeSet = statementsByChangeSet(updateSql);
+        List<IndexBuild> builds = new ArrayList<>();
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(changeLog);
+        NodeList changeSets = document.getElementsByTagName("changeSet");
+        for (int i = 0; i < changeSets.getLength(); i++) {
+            Element changeSet = (Element) changeSets.item(i);
+            String id = changeSet.getAttribute("id");
+            List<String> statements = statementsByChangeSet.get(id);
+            if (statements == null || statements.isEmpty()) {
+                continue;
+            }
+
+            Element change = firstChildElement(changeSet);
+            boolean foreignKey = change.getTagName().equals("addForeignKeyConstraint");
+            Set<String> tables = new LinkedHashSet<>();
+            for (String attribute : List.of("tableName", "baseTableName", "referencedTableName")) {
+                if (!change.getAttribute(attribute).isEmpty()) {
+                    tables.add(change.getAttribute(attribute).toUpperCase());
+                }
+            }
+            String name = change.hasAttribute("indexName") ? change.getAttribute("indexName") : change.getAttribute("constraintName");
+            if (name.isEmpty()) {
+                name = change.getTagName();
+            }
+
+            builds.add(new IndexBuild(id, name + " on " + String.join(", ", tables), foreignKey, tables, statements));
+        }
+
+        return builds;
+    }
+
+    private static Map<String, List<String>> statementsByChangeSet(String updateSql) {
+        Map<String, List<String>> statementsByChangeSet = new LinkedHashMap<>();
+        List<String> statements = null;
+        StringBuilder statement = new StringBuilder();
+
+        for (String line : updateSql.split("\\R")) {
+            if (line.startsWith(CHANGESET_HEADER)) {
+                // e.g. "-- Changeset db-migration-scripts/initial/create-index.xml::27::gocd(generated)"
+                statements = statementsByChangeSet.computeIfAbsent(line.substring(CHANGESET_HEADER.length()).split("::")[1], id -> new ArrayList<>());
+                statement.setLength(0);
+                continue;
+            }
+            if (line.startsWith(RELEASE_LOCK_HEADER)) {
+                statements = null;
+                continue;
+            }
+            if (statements == null || line.isBlank() || line.startsWith("--")) {
+                continue;
+            }
+
+            statement.append(line).append('\n');
+            if (line.stripTrailing().endsWith(";")) {
+                String sql = statement.toString().strip();
+                statements.add(sql.substring(0, sql.length() - 1));
+                statement.setLength(0);
+            }
+        }
+
+        return statementsByChangeSet;
+    }
+
+    private static Element firstChildElement(Element element) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                return (Element) child;
+            }
+        }
+        throw new IllegalArgumentException("Changeset " + element.getAttribute("id") + " has no changes");
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
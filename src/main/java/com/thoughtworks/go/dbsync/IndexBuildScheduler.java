@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.SQLDialect;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static org.jooq.impl.DSL.using;
+
+/**
+ * Runs the index builds of the {@code createIndex} context concurrently, each on its own connection. Indices and unique
+ * constraints do not depend on each other and start right away. A foreign key starts once the indices and unique
+ * constraints on both of its tables are built, and foreign keys sharing a table run one after another, since each of
+ * them locks both tables.
+ */
+class IndexBuildScheduler {
+    private final DataSource dataSource;
+    private final int threads;
+    private final int memoryMb;
+    private final int parallelWorkers;
+    private final Set<String> unsupportedSettings = ConcurrentHashMap.newKeySet();
+    private final Map<IndexBuild, Long> timings = new ConcurrentHashMap<>();
+
+    IndexBuildScheduler(DataSource dataSource, int threads, int memoryMb, int parallelWorkers) {
+        this.dataSource = dataSource;
+        this.threads = threads;
+        this.memoryMb = memoryMb;
+        this.parallelWorkers = parallelWorkers;
+    }
+
+    void run(List<IndexBuild> builds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Map<String, List<CompletableFuture<Void>>> indexBuildsByTable = new HashMap<>();
+        Map<String, CompletableFuture<Void>> lastForeignKeyByTable = new HashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        try {
+            for (IndexBuild build : builds) {
+                if (!build.foreignKey) {
+                    CompletableFuture<Void> future = CompletableFuture.runAsync(() -> build(build), executor);
+                    build.tables.forEach(table -> indexBuildsByTable.computeIfAbsent(table, (key) -> new ArrayList<>()).add(future));
+                    futures.add(future);
+                }
+            }
+
+            for (IndexBuild build : builds) {
+                if (build.foreignKey) {
+                    List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                    for (String table : build.tables) {
+                        dependencies.addAll(indexBuildsByTable.getOrDefault(table, List.of()));
+                        if (lastForeignKeyByTable.containsKey(table)) {
+                            dependencies.add(lastForeignKeyByTable.get(table));
+                        }
+                    }
+
+                    CompletableFuture<Void> future = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture[0]))
+                            .thenRunAsync(() -> build(build), executor);
+                    build.tables.forEach(table -> lastForeignKeyByTable.put(table, future));
+                    futures.add(future);
+                }
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info("Time taken to build indices and constraints:");
+        timings.entrySet().stream()
+                .sorted(Map.Entry.<IndexBuild, Long>comparingByValue().reversed())
+                .forEach(entry -> LOG.info("  {}: {}ms", entry.getKey(), entry.getValue()));
+    }
+
+    private void build(IndexBuild build) {
+        long startTime = System.currentTimeMillis();
+        LOG.debug("Building {}", build);
+
+        try (Connection connection = dataSource.getConnection()) {
+            SQLDialect dialect = using(connection).dialect();
+            applySettings(connection, settings(dialect));
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : build.statements) {
+                    statement.execute(sql);
+                }
+            } finally {
+                applySettings(connection, resetSettings(dialect));
+            }
+        } catch (SQLException e) {
+            LOG.error("Could not build {}", build, e);
+            throw new RuntimeException(e);
+        }
+
+        long endTime = System.currentTimeMillis();
+        timings.put(build, endTime - startTime);
+        LOG.debug("Took {}ms to build {}", endTime - startTime, build);
+    }
+
+    private List<String> settings(SQLDialect dialect) {
+        switch (dialect.family()) {
+            case POSTGRES:
+                return List.of(
+                        String.format("SET maintenance_work_mem = '%dMB'", memoryMb),
+                        String.format("SET max_parallel_maintenance_workers = %d", parallelWorkers) // PostgreSQL 11+
+                );
+            case MYSQL:
+                return List.of(
+                        String.format("SET SESSION innodb_ddl_buffer_size = %d", memoryMb * 1024L * 1024L), // MySQL 8.0.27+
+                        String.format("SET SESSION innodb_ddl_threads = %d", parallelWorkers) // MySQL 8.0.27+
+                );
+            default:
+                return List.of();
+        }
+    }
+
+    private List<String> resetSettings(SQLDialect dialect) {
+        switch (dialect.family()) {
+            case POSTGRES:
+                return List.of("RESET maintenance_work_mem", "RESET max_parallel_maintenance_workers");
+            case MYSQL:
+                return List.of("SET SESSION innodb_ddl_buffer_size = DEFAULT", "SET SESSION innodb_ddl_threads = DEFAULT");
+            default:
+                return List.of();
+        }
+    }
+
+    /**
+     * Settings not supported by the version of the target database are skipped, after logging a warning once.
+     */
+    private void applySettings(Connection connection, List<String> settings) {
+        for (String setting : settings) {
+            String name = setting.replaceFirst("^(SET SESSION|SET|RESET) (\\w+).*$", "$2");
+            if (unsupportedSettings.contains(name)) {
+                continue;
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(setting);
+            } catch (SQLException e) {
+                if (unsupportedSettings.add(name)) {
+                    LOG.warn("Could not change setting {} on target database, it will not be used for building indices: {}", name, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in power-of-two buckets of microseconds, so that percentiles are accurate to within a factor of two
+ * without keeping every sample. Latencies may be recorded by any number of threads.
+ */
+class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the upper bound of the bucket that holds the given fraction of latencies, e.g. 0.99 for the 99th
+     * percentile, in microseconds.
+     */
+    long percentileMicros(double fraction) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    String toJson() {
+        long total = count.sum();
+        return "{\"count\": " + total +
+                ", \"totalMillis\": " + TimeUnit.MICROSECONDS.toMillis(totalMicros.sum()) +
+                ", \"meanMicros\": " + (total == 0 ? 0 : totalMicros.sum() / total) +
+                ", \"p50Micros\": " + percentileMicros(0.50) +
+                ", \"p95Micros\": " + percentileMicros(0.95) +
+                ", \"p99Micros\": " + percentileMicros(0.99) +
+                ", \"maxMicros\": " + maxMicros.get() + "}";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+
+import javax.sql.DataSource;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Runs the contexts of {@code liquibase.xml} in-process, against a single target database connection that is held for
+ * the lifetime of the session. The change log is parsed once, when the session is opened, instead of once for every
+ * context, and the SQL generated for a context is written straight to the dump writer.
+ * <p>
+ * Liquibase logs using {@code java.util.logging}, which is switched off, just like {@code --logLevel=off} did for the
+ * command line, without touching the logback configuration of the migrator.
+ */
+class LiquibaseSession implements AutoCloseable {
+    private static final String CHANGE_LOG = "liquibase.xml";
+    // held on to, because java.util.logging only keeps weak references to its loggers
+    private static final Logger LIQUIBASE_LOGGER = Logger.getLogger("liquibase");
+
+    private final Database database;
+    private final Liquibase liquibase;
+
+    LiquibaseSession(DataSource targetDataSource) throws Exception {
+        LIQUIBASE_LOGGER.setLevel(Level.OFF);
+
+        long start = System.currentTimeMillis();
+        database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(targetDataSource.getConnection()));
+        try {
+            liquibase = new Liquibase(CHANGE_LOG, new ClassLoaderResourceAccessor(getClass().getClassLoader()), database);
+            liquibase.getDatabaseChangeLog();
+        } catch (Exception e) {
+            database.close();
+            throw e;
+        }
+        LOG.debug("Took {}ms to parse {}", System.currentTimeMillis() - start, CHANGE_LOG);
+    }
+
+    /**
+     * Writes the SQL of the changesets of the given context that were not run yet to the {@code writer}.
+     */
+    synchronized void writeSql(String contexts, Writer writer) throws Exception {
+        synchronized (writer) {
+            liquibase.update(new Contexts(contexts), new LabelExpression(), writer);
+            writer.flush();
+        }
+    }
+
+    String sql(String contexts) throws Exception {
+        StringWriter writer = new StringWriter();
+        writeSql(contexts, writer);
+        return writer.toString();
+    }
+
+    synchronized void update(String contexts) throws Exception {
+        liquibase.update(new Contexts(contexts), new LabelExpression());
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        database.close();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Tracks the largest id copied into each table while records are copied, so that the sequences of all tables can be
+ * reset by a single statement, instead of by a {@code max(id)} per table, which is a full scan of a freshly loaded
+ * table that has no indices yet.
+ * <p>
+ * Ids are not assumed to increase, neither within a batch nor across the ranges of a table. The largest id is only
+ * known for tables that were copied entirely by this run, the others are scanned. These are tables with ranges that
+ * were copied by a previous run when resuming, and tables to which no records were copied, including every table when
+ * the copy phase itself completed in a previous run.
+ */
+class MaxIdTracker {
+    private final Map<String, LongAccumulator> maxIds = new ConcurrentHashMap<>();
+    private final Set<String> incompleteTables = ConcurrentHashMap.newKeySet();
+
+    void copied(String table, long maxId) {
+        maxIds.computeIfAbsent(table.toLowerCase(), (name) -> new LongAccumulator(Math::max, Long.MIN_VALUE)).accumulate(maxId);
+    }
+
+    /**
+     * Records that some of the records of {@code table} were copied by a previous run.
+     */
+    void copiedPreviously(String table) {
+        incompleteTables.add(table.toLowerCase());
+    }
+
+    OptionalLong maxId(String table) {
+        String name = table.toLowerCase();
+        LongAccumulator maxId = maxIds.get(name);
+        if (maxId == null || incompleteTables.contains(name)) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(maxId.get());
+    }
+
+    /**
+     * @return a PostgreSQL statement that sets the sequence of each table to its largest id.
+     */
+    String setSequencesSql(Collection<String> tableNames) {
+        List<String> setvals = new ArrayList<>();
+        List<String> scannedTables = new ArrayList<>();
+        for (String tableName : tableNames) {
+            String sequenceName = tableName.toLowerCase() + "_id_seq";
+            OptionalLong maxId = maxId(tableName);
+            if (maxId.isPresent()) {
+                setvals.add(String.format("setval('%s', %d)", sequenceName, maxId.getAsLong()));
+            } else {
+                setvals.add(String.format("setval('%s', (select max(id) from %s))", sequenceName, tableName));
+                scannedTables.add(tableName);
+            }
+        }
+
+        if (!scannedTables.isEmpty()) {
+            LOG.debug("Largest ids of {} are not known from the copy, these tables are scanned.", scannedTables);
+        }
+        return "select " + String.join(", ", setvals);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import jdk.jfr.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.function.LongSupplier;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Java Flight Recorder events emitted along the copy of every batch, so that the time spent in the source driver,
+ * rendering SQL and the target database can be analysed next to the GC and I/O events of the JVM. Events cost next to
+ * nothing unless a recording is running, either started with {@code --jfr}, or attached using {@code jcmd}.
+ */
+class MigrationEvents {
+    private MigrationEvents() {
+    }
+
+    /**
+     * Starts a recording using the {@code profile} settings of the JDK, with every migration event enabled. The
+     * recording is written to the file when it is closed, or when the JVM exits.
+     */
+    static Recording startRecording(File file) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("gocd-database-migrator");
+        recording.enable(BatchFetched.class);
+        recording.enable(BatchRendered.class);
+        recording.enable(BatchExecuted.class);
+        recording.enable(BatchTransferred.class);
+        recording.enable(PhaseCompleted.class);
+        recording.enable(ConnectionAcquired.class);
+        recording.setDestination(file.toPath());
+        recording.setDumpOnExit(true);
+        recording.start();
+        LOG.info("Recording Java Flight Recorder events to {}.", file);
+        return recording;
+    }
+
+    @Category({"GoCD", "Database Migrator"})
+    abstract static class BatchEvent extends Event {
+        @Label("Table")
+        String table;
+
+        @Label("Records")
+        int records;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        /**
+         * Ends the event, which was started by {@link #begin()}. The size is only computed when the event is recorded.
+         */
+        void commit(String table, int records, LongSupplier bytes) {
+            end();
+            if (shouldCommit()) {
+                this.table = table;
+                this.records = records;
+                this.bytes = bytes.getAsLong();
+                commit();
+            }
+        }
+    }
+
+    @Name("com.thoughtworks.go.dbsync.BatchFetched")
+    @Label("Batch Fetched")
+    @Description("A batch of records read from the source database")
+    static class BatchFetched extends BatchEvent {
+    }
+
+    @Name("com.thoughtworks.go.dbsync.BatchRendered")
+    @Label("Batch Rendered")
+    @Description("A batch of records rendered as an inlined INSERT statement")
+    static class BatchRendered extends BatchEvent {
+    }
+
+    @Name("com.thoughtworks.go.dbsync.BatchExecuted")
+    @Label("Batch Executed")
+    @Description("A batch of records loaded into the target database")
+    static class BatchExecuted extends BatchEvent {
+    }
+
+    @Name("com.thoughtworks.go.dbsync.BatchTransferred")
+    @Label("Batch Transferred")
+    @Description("A batch of records read from the source database and loaded into the target database by --direct-transfer, which interleaves both")
+    static class BatchTransferred extends BatchEvent {
+        @Label("Fetch Time")
+        @Description("Time spent reading the batch from the source database")
+        @Timespan(Timespan.NANOSECONDS)
+        long fetchTime;
+    }
+
+    @Name("com.thoughtworks.go.dbsync.PhaseCompleted")
+    @Label("Phase Completed")
+    @Category({"GoCD", "Database Migrator"})
+    static class PhaseCompleted extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.thoughtworks.go.dbsync.ConnectionAcquired")
+    @Label("Connection Acquired")
+    @Description("Time spent waiting for a connection from a pool")
+    @Category({"GoCD", "Database Migrator"})
+    static class ConnectionAcquired extends Event {
+        @Label("Pool")
+        String pool;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+
+/**
+ * Runs the copy of a table as three stages connected by bounded queues: a single reader, a number of converters and a
+ * number of writers. A full queue blocks the stage feeding it, so that a slow target applies backpressure to the
+ * source instead of letting batches pile up in memory.
+ */
+class Pipeline<I, O> {
+    private static final Object END = new Object();
+
+    private final String name;
+    private final int queueSize;
+    private final int convertThreads;
+    private final int writeThreads;
+    private final boolean virtualThreads;
+    private final Stats stats;
+
+    Pipeline(String name, int queueSize, int convertThreads, int writeThreads, boolean virtualThreads, Stats stats) {
+        this.name = name;
+        this.virtualThreads = virtualThreads;
+        this.queueSize = queueSize;
+        this.convertThreads = convertThreads;
+        this.writeThreads = writeThreads;
+        this.stats = stats;
+    }
+
+    void run(Source<I> source, Stage<I, O> converter, SinkFactory<O> sinks) throws Exception {
+        BlockingQueue<Object> toConvert = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Object> toWrite = new ArrayBlockingQueue<>(queueSize);
+        AtomicInteger runningConverters = new AtomicInteger(convertThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+
+        int stageCount = 1 + convertThreads + writeThreads;
+        ExecutorService executor = Util.newExecutor(stageCount, virtualThreads, r -> new Thread(r, "pipeline-" + name + "-" + threadCount.incrementAndGet()));
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        try {
+            stages.submit(() -> read(source, toConvert));
+            for (int i = 0; i < convertThreads; i++) {
+                stages.submit(() -> convert(converter, toConvert, toWrite, runningConverters));
+            }
+            for (int i = 0; i < writeThreads; i++) {
+                stages.submit(() -> write(sinks, toWrite));
+            }
+
+            for (int i = 0; i < stageCount; i++) {
+                try {
+                    stages.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.warn("Timed out waiting for stages of pipeline {} to stop", name);
+            }
+        }
+    }
+
+    private Void read(Source<I> source, BlockingQueue<Object> out) throws Exception {
+        while (true) {
+            long start = System.nanoTime();
+            I item = source.next();
+            stats.reading.add(System.nanoTime() - start);
+
+            if (item == null) {
+                break;
+            }
+            put(out, item, stats.readerBlocked);
+        }
+
+        for (int i = 0; i < convertThreads; i++) {
+            put(out, END, stats.readerBlocked);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Void convert(Stage<I, O> converter, BlockingQueue<Object> in, BlockingQueue<Object> out, AtomicInteger runningConverters) throws Exception {
+        while (true) {
+            Object item = take(in, stats.converterStarved);
+            if (item == END) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            O converted = converter.apply((I) item);
+            stats.converting.add(System.nanoTime() - start);
+
+            put(out, converted, stats.converterBlocked);
+        }
+
+        if (runningConverters.decrementAndGet() == 0) {
+            for (int i = 0; i < writeThreads; i++) {
+                put(out, END, stats.converterBlocked);
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Void write(SinkFactory<O> sinks, BlockingQueue<Object> in) throws Exception {
+        try (Sink<O> sink = sinks.open()) {
+            while (true) {
+                Object item = take(in, stats.writerStarved);
+                if (item == END) {
+                    break;
+                }
+
+                long start = System.nanoTime();
+                sink.accept((O) item);
+                stats.writing.add(System.nanoTime() - start);
+            }
+        }
+        return null;
+    }
+
+    private static void put(BlockingQueue<Object> queue, Object item, LongAdder waitTime) throws InterruptedException {
+        long start = System.nanoTime();
+        queue.put(item);
+        waitTime.add(System.nanoTime() - start);
+    }
+
+    private static Object take(BlockingQueue<Object> queue, LongAdder waitTime) throws InterruptedException {
+        long start = System.nanoTime();
+        Object item = queue.take();
+        waitTime.add(System.nanoTime() - start);
+        return item;
+    }
+
+    interface Source<T> {
+        /**
+         * @return the next item, or {@code null} when there are no more items.
+         */
+        T next() throws Exception;
+    }
+
+    interface Stage<I, O> {
+        O apply(I input) throws Exception;
+    }
+
+    interface Sink<T> extends AutoCloseable {
+        void accept(T item) throws Exception;
+    }
+
+    interface SinkFactory<T> {
+        Sink<T> open() throws Exception;
+    }
+
+    /**
+     * Time spent working and waiting in each stage, accumulated across all pipelines. A reader that is often blocked
+     * on a full queue points at the target database (or conversion) being the bottleneck, while writers that are
+     * often waiting for input point at the source database.
+     */
+    static class Stats {
+        final LongAdder reading = new LongAdder();
+        final LongAdder readerBlocked = new LongAdder();
+        final LongAdder converting = new LongAdder();
+        final LongAdder converterStarved = new LongAdder();
+        final LongAdder converterBlocked = new LongAdder();
+        final LongAdder writing = new LongAdder();
+        final LongAdder writerStarved = new LongAdder();
+
+        @Override
+        public String toString() {
+            return String.format("read %dms (blocked on converters %dms), convert %dms (waiting for reader %dms, blocked on writers %dms), write %dms (waiting for converters %dms)",
+                    millis(reading), millis(readerBlocked),
+                    millis(converting), millis(converterStarved), millis(converterBlocked),
+                    millis(writing), millis(writerStarved));
+        }
+
+        private static long millis(LongAdder nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.impl.DSL;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Streams records into a PostgreSQL table using {@code COPY ... FROM STDIN} in the text format. A single {@code COPY}
+ * is kept open for all batches of a table, and is completed when the loader is closed, or when the
+ * {@link BulkLoadSession} is due to commit.
+ */
+class PostgresCopyLoader implements TableLoader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String table;
+    private final BulkLoadSession session;
+    private final Connection connection;
+    private PGCopyOutputStream copyStream;
+    private Writer copyWriter;
+    private long recordsSent;
+
+    PostgresCopyLoader(String table, BulkLoadSession session) {
+        this.table = table;
+        this.session = session;
+        this.connection = session.connection();
+    }
+
+    @Override
+    public boolean load(Result<Record> records) throws IOException, SQLException {
+        if (copyStream == null) {
+            startCopy(records.fields());
+        }
+
+        for (Record record : records) {
+            for (int i = 0; i < record.size(); i++) {
+                if (i > 0) {
+                    copyWriter.write('\t');
+                }
+                writeValue(copyWriter, record.get(i));
+            }
+            copyWriter.write('\n');
+        }
+        recordsSent += records.size();
+
+        if (session.commitDue()) {
+            endCopy();
+            session.commit();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean load(SourceRows rows, int maxRows) throws IOException, SQLException {
+        if (copyStream == null) {
+            startCopy(Arrays.stream(rows.columnNames()).map(DSL::name).map(DSL::field).toArray(Field[]::new));
+        }
+
+        int rowCount = 0;
+        while (rowCount < maxRows && rows.next()) {
+            rows.writeCopyText(copyWriter);
+            rowCount++;
+        }
+        if (rowCount == 0) {
+            return false;
+        }
+        recordsSent += rowCount;
+
+        if (session.commitDue()) {
+            endCopy();
+            session.commit();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try (BulkLoadSession ignored = session) {
+            endCopy();
+            session.commit();
+        }
+    }
+
+    private void endCopy() throws IOException, SQLException {
+        if (copyStream == null) {
+            return;
+        }
+
+        copyWriter.flush();
+        long recordsCopied = copyStream.endCopy();
+        LOG.debug("Copied {} records into table {}", recordsCopied, table);
+
+        if (recordsCopied != recordsSent) {
+            throw new RuntimeException(String.format("Expected COPY into table %s to load %d records but it loaded %d records", table, recordsSent, recordsCopied));
+        }
+
+        copyStream = null;
+        copyWriter = null;
+        recordsSent = 0;
+    }
+
+    private void startCopy(Field<?>[] fields) throws SQLException {
+        String columns = Arrays.stream(fields).map(Field::getName).collect(joining(", "));
+        String sql = String.format("COPY %s (%s) FROM STDIN", table, columns);
+
+        LOG.debug("Starting {}", sql);
+        copyStream = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, BUFFER_SIZE);
+        copyWriter = new BufferedWriter(new OutputStreamWriter(copyStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    static void writeValue(Writer writer, Object value) throws IOException {
+        if (value == null) {
+            writer.write("\\N");
+        } else if (value instanceof byte[]) {
+            writer.write("\\\\x");
+            for (byte b : (byte[]) value) {
+                writer.write(HEX[(b >> 4) & 0xF]);
+                writer.write(HEX[b & 0xF]);
+            }
+        } else if (value instanceof Boolean) {
+            writer.write((Boolean) value ? "t" : "f");
+        } else if (value instanceof BigDecimal) {
+            writer.write(((BigDecimal) value).toPlainString());
+        } else {
+            String string = value.toString();
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '\\':
+                        writer.write("\\\\");
+                        break;
+                    case '\n':
+                        writer.write("\\n");
+                        break;
+                    case '\r':
+                        writer.write("\\r");
+                        break;
+                    case '\t':
+                        writer.write("\\t");
+                        break;
+                    default:
+                        writer.write(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static com.thoughtworks.go.dbsync.DumpOutput.jsonString;
+
+/**
+ * Measurements of a run: the wall time of each phase, the records and bytes copied for each table, and latency
+ * histograms of the steps every batch goes through. While the run is in progress they are written to a status file
+ * every few seconds, and once it is over, to a run report, both as JSON, so that runs can be compared and maintenance
+ * windows sized.
+ */
+class RunMetrics {
+    final LatencyHistogram fetch = new LatencyHistogram();
+    final LatencyHistogram render = new LatencyHistogram();
+    final LatencyHistogram execute = new LatencyHistogram();
+    final LatencyHistogram write = new LatencyHistogram();
+    final LatencyHistogram poolWait = new LatencyHistogram();
+
+    private final Instant startedAt = Instant.now();
+    private final Map<String, Long> phaseMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, TableMetrics> tables = new ConcurrentSkipListMap<>();
+    private volatile String currentPhase = "";
+    private ScheduledExecutorService statusUpdates;
+    private File statusFile;
+    private boolean finished;
+
+    void phaseStarted(String phase) {
+        currentPhase = phase;
+    }
+
+    void phaseDone(String phase, long millis) {
+        phaseMillis.put(phase, millis);
+        LOG.debug("Phase {} took {}ms", phase, millis);
+    }
+
+    void tableStarted(String table) {
+        tables.computeIfAbsent(table, (name) -> new TableMetrics()).started();
+    }
+
+    void batchCopied(String table, int records, long bytes) {
+        tables.computeIfAbsent(table, (name) -> new TableMetrics()).batchCopied(records, bytes);
+    }
+
+    /**
+     * Records when a table was predicted to complete by the {@link IdRangeScheduler}, and when it did complete, in
+     * milliseconds since the copy started.
+     */
+    void tableCompletion(String table, long[] predictedAndActualMillis) {
+        TableMetrics metrics = tables.computeIfAbsent(table, (name) -> new TableMetrics());
+        metrics.predictedCompletionMillis = predictedAndActualMillis[0];
+        metrics.completionMillis = predictedAndActualMillis[1];
+    }
+
+    void startStatusUpdates(File statusFile, long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+
+        this.statusFile = statusFile;
+        statusUpdates = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-file");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statusUpdates.scheduleAtFixedRate(() -> {
+            try {
+                updateStatus();
+            } catch (Exception e) {
+                LOG.warn("Could not update status file {}: {}", statusFile, e.getMessage());
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops updating the status file, and writes the final status to it and to the run report. Only the first call has
+     * an effect, so that a run that fails after reporting why it stopped keeps that report.
+     */
+    synchronized void finish(File reportFile, String status) throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+
+        if (statusUpdates != null) {
+            statusUpdates.shutdownNow();
+            writeTo(statusFile, status);
+        }
+        writeTo(reportFile, status);
+        LOG.info("Wrote run report to {}.", reportFile);
+    }
+
+    private synchronized void updateStatus() throws IOException {
+        if (!finished) {
+            writeTo(statusFile, "running");
+        }
+    }
+
+    /**
+     * Replaces the file in a single move, so that readers never see a partially written file.
+     */
+    synchronized void writeTo(File file, String status) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        Files.writeString(tempFile.toPath(), toJson(status), StandardCharsets.UTF_8);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    String toJson(String status) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"status\": ").append(jsonString(status)).append(",\n");
+        json.append("  \"startedAt\": ").append(jsonString(startedAt.toString())).append(",\n");
+        json.append("  \"elapsedMillis\": ").append(System.currentTimeMillis() - startedAt.toEpochMilli()).append(",\n");
+        json.append("  \"currentPhase\": ").append(jsonString(currentPhase)).append(",\n");
+
+        json.append("  \"phases\": [");
+        synchronized (phaseMillis) {
+            int i = 0;
+            for (Map.Entry<String, Long> phase : phaseMillis.entrySet()) {
+                json.append(i++ == 0 ? "\n" : ",\n")
+                        .append("    {\"name\": ").append(jsonString(phase.getKey()))
+                        .append(", \"millis\": ").append(phase.getValue())
+                        .append("}");
+            }
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"tables\": [");
+        int i = 0;
+        for (Map.Entry<String, TableMetrics> table : tables.entrySet()) {
+            json.append(i++ == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": ").append(jsonString(table.getKey()))
+                    .append(", ").append(table.getValue().toJson())
+                    .append("}");
+        }
+        json.append("\n  ],\n");
+
+        json.append("  \"batches\": {\n");
+        json.append("    \"fetch\": ").append(fetch.toJson()).append(",\n");
+        json.append("    \"render\": ").append(render.toJson()).append(",\n");
+        json.append("    \"execute\": ").append(execute.toJson()).append(",\n");
+        json.append("    \"write\": ").append(write.toJson()).append(",\n");
+        json.append("    \"poolWait\": ").append(poolWait.toJson()).append("\n");
+        json.append("  }\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Throughput of a table is measured from the start of its first id range to the last batch copied, since the
+     * id ranges of a table are copied in parallel.
+     */
+    private static class TableMetrics {
+        private final LongAdder records = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicLong startNanos = new AtomicLong();
+        private volatile long lastBatchNanos;
+        private volatile long predictedCompletionMillis = -1;
+        private volatile long completionMillis = -1;
+
+        void started() {
+            startNanos.compareAndSet(0, System.nanoTime());
+        }
+
+        void batchCopied(int batchRecords, long batchBytes) {
+            started();
+            records.add(batchRecords);
+            bytes.add(batchBytes);
+            lastBatchNanos = System.nanoTime();
+        }
+
+        String toJson() {
+            long millis = lastBatchNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(lastBatchNanos - startNanos.get());
+            long recordCount = records.sum();
+            long byteCount = bytes.sum();
+            return "\"records\": " + recordCount +
+                    ", \"bytes\": " + byteCount +
+                    ", \"millis\": " + millis +
+                    ", \"recordsPerSecond\": " + (millis == 0 ? 0 : recordCount * 1000 / millis) +
+                    ", \"bytesPerSecond\": " + (millis == 0 ? 0 : byteCount * 1000 / millis) +
+                    ", \"predictedCompletionMillis\": " + predictedCompletionMillis +
+                    ", \"completionMillis\": " + completionMillis;
+        }
+    }
+}
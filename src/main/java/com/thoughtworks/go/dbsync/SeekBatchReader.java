@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Condition;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+
+import java.sql.Connection;
+
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Reads the records in an {@link IdRange} in batches, using seek pagination on the {@code id} column.
+ */
+class SeekBatchReader extends BatchReader {
+    private final Connection sourceConnection;
+    private final IdRange idRange;
+    private final Field<Long> idField = field("id", Long.class);
+    private final Condition upperBound;
+    private long lastIdSeen;
+    private boolean exhausted;
+
+    SeekBatchReader(Connection sourceConnection, IdRange idRange, BatchSizer batchSizer) {
+        super(batchSizer);
+        this.sourceConnection = sourceConnection;
+        this.idRange = idRange;
+        this.upperBound = idRange.upperBound(idField);
+        this.lastIdSeen = idRange.fromIdExclusive;
+    }
+
+    @Override
+    protected Result<Record> fetch(int batchSize) {
+        if (exhausted) {
+            return null;
+        }
+
+        Result<Record> records = using(sourceConnection)
+                .select(asterisk())
+                .from(idRange.table)
+                .where(upperBound)
+                .orderBy(idField)
+                .seek(lastIdSeen)
+                .limit(batchSize)
+                .fetch();
+
+        exhausted = records.size() < batchSize;
+        if (records.isEmpty()) {
+            return null;
+        }
+
+        lastIdSeen = lastId(records);
+        return records;
+    }
+}
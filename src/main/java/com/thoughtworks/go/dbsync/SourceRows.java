@@ -0,0 +1,325 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.*;
+
+/**
+ * The rows of a source {@link ResultSet}, read one at a time without materializing jOOQ records. How each column is
+ * read is decided once from the {@link ResultSetMetaData}, so that numeric and boolean values move to the target as
+ * primitives, without boxing, and other values are read using the most specific getter of their type.
+ * <p>
+ * Also tracks the number of rows, the estimated bytes, the last and largest id of the current batch, and the time spent
+ * reading it from the source, which is interleaved with loading it into the target.
+ */
+class SourceRows {
+    enum ColumnKind {LONG, INTEGER, DOUBLE, BOOLEAN, DECIMAL, TIMESTAMP, DATE, BYTES, STRING, OBJECT}
+
+    private final String[] columnNames;
+    private final ColumnKind[] kinds;
+    private final int idColumn;
+    private final char[] digits = new char[20];
+    private ResultSet resultSet;
+
+    private int batchRows;
+    private long batchBytes;
+    private long lastId;
+    private long maxId;
+    private long batchReadNanos;
+
+    SourceRows(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        columnNames = new String[columnCount];
+        kinds = new ColumnKind[columnCount];
+        int id = -1;
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = metaData.getColumnLabel(i + 1);
+            kinds[i] = kindOf(metaData.getColumnType(i + 1));
+            if (columnNames[i].equalsIgnoreCase("id")) {
+                id = i + 1;
+            }
+        }
+        if (id < 0) {
+            throw new RuntimeException("Unable to determine id column");
+        }
+        idColumn = id;
+    }
+
+    static ColumnKind kindOf(int type) {
+        switch (type) {
+            case Types.BIGINT:
+                return ColumnKind.LONG;
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return ColumnKind.INTEGER;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return ColumnKind.DOUBLE;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return ColumnKind.BOOLEAN;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ColumnKind.DECIMAL;
+            case Types.TIMESTAMP:
+                return ColumnKind.TIMESTAMP;
+            case Types.DATE:
+                return ColumnKind.DATE;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return ColumnKind.BYTES;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return ColumnKind.STRING;
+            default:
+                return ColumnKind.OBJECT;
+        }
+    }
+
+    String[] columnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Reads from {@code resultSet} from now on, which must have the same columns.
+     */
+    void readFrom(ResultSet resultSet) {
+        this.resultSet = resultSet;
+    }
+
+    /**
+     * @param queryNanos the time spent executing the query of the batch, if it has its own query.
+     */
+    void startBatch(long queryNanos) {
+        batchRows = 0;
+        batchBytes = 0;
+        maxId = Long.MIN_VALUE;
+        batchReadNanos = queryNanos;
+    }
+
+    boolean next() throws SQLException {
+        long start = System.nanoTime();
+        boolean hasNext = resultSet.next();
+        batchReadNanos += System.nanoTime() - start;
+        if (!hasNext) {
+            return false;
+        }
+        lastId = resultSet.getLong(idColumn);
+        maxId = Math.max(maxId, lastId);
+        batchRows++;
+        return true;
+    }
+
+    int batchRows() {
+        return batchRows;
+    }
+
+    long batchBytes() {
+        return batchBytes;
+    }
+
+    long lastId() {
+        return lastId;
+    }
+
+    long maxId() {
+        return maxId;
+    }
+
+    long batchReadNanos() {
+        return batchReadNanos;
+    }
+
+    /**
+     * Binds the values of the current row to the parameters of {@code statement}, in the order of the columns.
+     */
+    void bind(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            switch (kinds[i]) {
+                case LONG: {
+                    long value = resultSet.getLong(column);
+                    if (resultSet.wasNull()) {
+                        statement.setNull(column, Types.NULL);
+                    } else {
+                        statement.setLong(column, value);
+                    }
+                    batchBytes += 8;
+                    break;
+                }
+                case INTEGER: {
+                    int value = resultSet.getInt(column);
+                    if (resultSet.wasNull()) {
+                        statement.setNull(column, Types.NULL);
+                    } else {
+                        statement.setInt(column, value);
+                    }
+                    batchBytes += 8;
+                    break;
+                }
+                case DOUBLE: {
+                    double value = resultSet.getDouble(column);
+                    if (resultSet.wasNull()) {
+                        statement.setNull(column, Types.NULL);
+                    } else {
+                        statement.setDouble(column, value);
+                    }
+                    batchBytes += 8;
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean value = resultSet.getBoolean(column);
+                    if (resultSet.wasNull()) {
+                        statement.setNull(column, Types.NULL);
+                    } else {
+                        statement.setBoolean(column, value);
+                    }
+                    batchBytes += 8;
+                    break;
+                }
+                case DECIMAL:
+                    statement.setBigDecimal(column, resultSet.getBigDecimal(column));
+                    batchBytes += 8;
+                    break;
+                case TIMESTAMP:
+                    statement.setTimestamp(column, resultSet.getTimestamp(column));
+                    batchBytes += 8;
+                    break;
+                case DATE:
+                    statement.setDate(column, resultSet.getDate(column));
+                    batchBytes += 8;
+                    break;
+                case BYTES: {
+                    byte[] value = resultSet.getBytes(column);
+                    statement.setBytes(column, value);
+                    batchBytes += value == null ? 8 : value.length;
+                    break;
+                }
+                case STRING: {
+                    String value = resultSet.getString(column);
+                    statement.setString(column, value);
+                    batchBytes += value == null ? 8 : value.length();
+                    break;
+                }
+                default: {
+                    Object value = resultSet.getObject(column);
+                    if (value == null) {
+                        statement.setNull(column, Types.NULL);
+                    } else {
+                        statement.setObject(column, value);
+                    }
+                    batchBytes += 8;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the current row as a line of the text format of PostgreSQL {@code COPY}.
+     */
+    void writeCopyText(Writer writer) throws SQLException, IOException {
+        for (int i = 0; i < kinds.length; i++) {
+            int column = i + 1;
+            if (i > 0) {
+                writer.write('\t');
+            }
+            switch (kinds[i]) {
+                case LONG:
+                case INTEGER: {
+                    long value = resultSet.getLong(column);
+                    if (resultSet.wasNull()) {
+                        writer.write("\\N");
+                    } else {
+                        writeDigits(writer, value);
+                    }
+                    batchBytes += 8;
+                    break;
+                }
+                case DOUBLE: {
+                    double value = resultSet.getDouble(column);
+                    writer.write(resultSet.wasNull() ? "\\N" : Double.toString(value));
+                    batchBytes += 8;
+                    break;
+                }
+                case BOOLEAN: {
+                    boolean value = resultSet.getBoolean(column);
+                    writer.write(resultSet.wasNull() ? "\\N" : value ? "t" : "f");
+                    batchBytes += 8;
+                    break;
+                }
+                case BYTES: {
+                    byte[] value = resultSet.getBytes(column);
+                    PostgresCopyLoader.writeValue(writer, value);
+                    batchBytes += value == null ? 8 : value.length;
+                    break;
+                }
+                case STRING: {
+                    String value = resultSet.getString(column);
+                    PostgresCopyLoader.writeValue(writer, value);
+                    batchBytes += value == null ? 8 : value.length();
+                    break;
+                }
+                case DECIMAL:
+                    PostgresCopyLoader.writeValue(writer, resultSet.getBigDecimal(column));
+                    batchBytes += 8;
+                    break;
+                case TIMESTAMP:
+                    PostgresCopyLoader.writeValue(writer, resultSet.getTimestamp(column));
+                    batchBytes += 8;
+                    break;
+                case DATE:
+                    PostgresCopyLoader.writeValue(writer, resultSet.getDate(column));
+                    batchBytes += 8;
+                    break;
+                default:
+                    PostgresCopyLoader.writeValue(writer, resultSet.getObject(column));
+                    batchBytes += 8;
+            }
+        }
+        writer.write('\n');
+    }
+
+    private void writeDigits(Writer writer, long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writer.write(Long.toString(value));
+            return;
+        }
+
+        int position = digits.length;
+        long remaining = Math.abs(value);
+        do {
+            digits[--position] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (value < 0) {
+            writer.write('-');
+        }
+        writer.write(digits, position, digits.length - position);
+    }
+}
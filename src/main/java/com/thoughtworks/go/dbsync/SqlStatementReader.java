@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a SQL dump into statements, on the {@code ;\n} terminator written by {@link Util#executeAndLog}, while
+ * reading it in chunks rather than all at once. Terminators inside string literals and comments are ignored. Comment
+ * lines that are not part of a statement are returned as is, so that the sections of the dump can be recognized.
+ */
+class SqlStatementReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    SqlStatementReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the next statement without its terminator, or the next comment line starting with {@code --}, or
+     * {@code null} at the end of the dump.
+     */
+    String next() throws IOException {
+        StringBuilder statement = new StringBuilder();
+        boolean inLiteral = false;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (!inLiteral && c == '-' && peek() == '-') {
+                String comment = "-" + readLine();
+                if (isBlank(statement)) {
+                    return comment;
+                }
+                statement.append('\n');
+                continue;
+            }
+            if (c == '\'') {
+                inLiteral = !inLiteral;
+            }
+            if (!inLiteral && c == ';' && (peek() == '\n' || peek() == -1)) {
+                read();
+                if (isBlank(statement)) {
+                    statement.setLength(0);
+                    continue;
+                }
+                return statement.toString().strip();
+            }
+            statement.append((char) c);
+        }
+
+        return isBlank(statement) ? null : statement.toString().strip();
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            line.append((char) c);
+        }
+        return line.toString().stripTrailing();
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private static boolean isBlank(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            if (!Character.isWhitespace(chars.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
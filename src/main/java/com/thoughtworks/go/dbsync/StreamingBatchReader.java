@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.*;
+import org.jooq.Record;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Reads all records of an {@link IdRange} using a single query, whose results are streamed from the database with a
+ * driver fetch size, instead of being materialized one seek batch at a time.
+ */
+class StreamingBatchReader extends BatchReader {
+    private final Connection sourceConnection;
+    private final boolean autoCommit;
+    private final Cursor<Record> cursor;
+
+    StreamingBatchReader(Connection sourceConnection, IdRange idRange, int fetchSize, BatchSizer batchSizer) throws SQLException {
+        super(batchSizer);
+        this.sourceConnection = sourceConnection;
+        this.autoCommit = sourceConnection.getAutoCommit();
+
+        DSLContext source = using(sourceConnection);
+        if (source.dialect().family() == SQLDialect.POSTGRES) {
+            // PgJDBC only fetches rows using a cursor outside of auto-commit mode, otherwise it reads the entire result
+            sourceConnection.setAutoCommit(false);
+        }
+        // Connector/J only streams rows one at a time when the fetch size is Integer.MIN_VALUE
+        int driverFetchSize = source.dialect().family() == SQLDialect.MYSQL ? Integer.MIN_VALUE : fetchSize;
+
+        Field<Long> idField = field("id", Long.class);
+        this.cursor = source
+                .select(asterisk())
+                .from(idRange.table)
+                .where(idField.gt(idRange.fromIdExclusive))
+                .and(idRange.upperBound(idField))
+                .orderBy(idField)
+                .fetchSize(driverFetchSize)
+                .fetchLazy();
+    }
+
+    @Override
+    protected Result<Record> fetch(int batchSize) {
+        Result<Record> records = cursor.fetchNext(batchSize);
+        return records.isEmpty() ? null : records;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            cursor.close();
+        } finally {
+            if (sourceConnection.getAutoCommit() != autoCommit) {
+                sourceConnection.rollback();
+                sourceConnection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.*;
+import org.jooq.Record;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.thoughtworks.go.dbsync.DbSync.LOG;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * The tables of a database, with their number of records estimated from catalog statistics, and the size of their
+ * records estimated from the types of their columns. The inventory is taken once per run, and is used to split tables
+ * into id ranges, to schedule the largest id ranges first, and to size the progress bar. Exact counts are only taken
+ * when verifying the copied records, and are cached.
+ */
+class TableInventory {
+    // large objects are mostly small in GoCD databases, but are read and written out of line
+    private static final long LOB_BYTES = 2048;
+
+    private final Map<String, Long> estimatedRowCounts;
+    private final Map<String, Long> estimatedRowBytes;
+    private final Map<String, Long> exactRowCounts = new ConcurrentHashMap<>();
+
+    private TableInventory(Map<String, Long> estimatedRowCounts, Map<String, Long> estimatedRowBytes) {
+        this.estimatedRowCounts = estimatedRowCounts;
+        this.estimatedRowBytes = estimatedRowBytes;
+    }
+
+    static TableInventory take(Connection connection) throws SQLException {
+        Map<String, Long> statistics = catalogRowCounts(using(connection));
+        Map<String, Long> estimatedRowCounts = new LinkedHashMap<>();
+
+        for (String tableName : tableNames(connection)) {
+            Long estimate = statistics.get(tableName.toUpperCase());
+            if (estimate == null || estimate < 0) {
+                LOG.debug("No statistics for table {}, counting its records.", tableName);
+                estimate = (long) using(connection).fetchCount(table(tableName));
+            }
+            estimatedRowCounts.put(tableName, estimate);
+        }
+
+        return new TableInventory(estimatedRowCounts, rowBytes(connection, estimatedRowCounts.keySet()));
+    }
+
+    static List<String> tableNames(Connection connection) {
+        Field<String> field = field("TABLE_NAME", String.class);
+        Result<Record1<String>> result = using(connection)
+                .select(field)
+                .from("INFORMATION_SCHEMA.tables")
+                .where("table_schema in ('PUBLIC', 'public') and table_type in ('TABLE', 'BASE TABLE')")
+                .fetch();
+
+        List<String> tableNames = new ArrayList<>();
+        for (Record1<String> record : result) {
+            String tableName = record.getValue(field);
+
+            if (!isChangeLogTable(tableName)) {
+                tableNames.add(tableName);
+            }
+        }
+        return tableNames;
+    }
+
+    Set<String> tableNames() {
+        return estimatedRowCounts.keySet();
+    }
+
+    Map<String, Long> estimatedRowCounts() {
+        return estimatedRowCounts;
+    }
+
+    Map<String, Long> estimatedRowBytes() {
+        return estimatedRowBytes;
+    }
+
+    long exactRowCount(Connection connection, String tableName) {
+        return exactRowCounts.computeIfAbsent(tableName, (key) -> (long) using(connection).fetchCount(table(tableName)));
+    }
+
+    /**
+     * @return estimated number of records keyed by upper case table name, negative when the table was never analyzed.
+     */
+    private static Map<String, Long> catalogRowCounts(DSLContext context) {
+        Result<Record> result;
+
+        switch (context.dialect().family()) {
+            case POSTGRES:
+                // like the planner, scale the tuple density of the last ANALYZE to the current size of the table
+                result = context.fetch("select c.relname as table_name, " +
+                        "case when c.relpages > 0 then (c.reltuples / c.relpages * (pg_relation_size(c.oid) / current_setting('block_size')::int))::bigint else -1 end as row_count " +
+                        "from pg_class c join pg_namespace n on n.oid = c.relnamespace " +
+                        "where n.nspname = 'public' and c.relkind = 'r'");
+                break;
+            case MYSQL:
+                result = context.fetch("select TABLE_NAME as table_name, TABLE_ROWS as row_count " +
+                        "from INFORMATION_SCHEMA.TABLES where TABLE_SCHEMA = database()");
+                break;
+            case H2:
+                result = context.fetch("select TABLE_NAME as table_name, ROW_COUNT_ESTIMATE as row_count " +
+                        "from INFORMATION_SCHEMA.TABLES where TABLE_SCHEMA = 'PUBLIC'");
+                break;
+            default:
+                return Map.of();
+        }
+
+        Map<String, Long> rowCounts = new HashMap<>();
+        for (Record record : result) {
+            Long rowCount = record.get(1, Long.class);
+            rowCounts.put(record.get(0, String.class).toUpperCase(), rowCount == null ? -1L : rowCount);
+        }
+        return rowCounts;
+    }
+
+    /**
+     * @return estimated size of a record of each table, assuming that variable length columns are half full.
+     */
+    private static Map<String, Long> rowBytes(Connection connection, Set<String> tableNames) throws SQLException {
+        Map<String, Long> rowBytes = new HashMap<>();
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, "%", "%")) {
+            while (columns.next()) {
+                String schema = columns.getString("TABLE_SCHEM");
+                String tableName = columns.getString("TABLE_NAME");
+                if ((schema == null || schema.equalsIgnoreCase("public")) && tableNames.contains(tableName)) {
+                    rowBytes.merge(tableName, columnBytes(columns.getInt("DATA_TYPE"), columns.getLong("COLUMN_SIZE")), Long::sum);
+                }
+            }
+        }
+        return rowBytes;
+    }
+
+    static long columnBytes(int type, long size) {
+        switch (type) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+            case Types.DATE:
+                return 4;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return 16;
+            case Types.CHAR:
+            case Types.NCHAR:
+                return Math.min(size, LOB_BYTES);
+            case Types.VARCHAR:
+            case Types.NVARCHAR:
+            case Types.VARBINARY:
+                // unbounded VARCHAR, and PostgreSQL TEXT, hold comments and messages like CLOBs do
+                return size > 4096 ? LOB_BYTES : Math.max(1, size / 2);
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.BLOB:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.LONGVARBINARY:
+                return LOB_BYTES;
+            default:
+                return 8;
+        }
+    }
+
+    private static boolean isChangeLogTable(String tableName) {
+        return tableName.equalsIgnoreCase("CHANGELOG") ||
+                tableName.equalsIgnoreCase("DATABASECHANGELOG") ||
+                tableName.equalsIgnoreCase("DATABASECHANGELOGLOCK");
+    }
+}
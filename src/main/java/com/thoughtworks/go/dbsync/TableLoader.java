@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Record;
+import org.jooq.Result;
+
+/**
+ * Loads batches of records read from a source table into the same table on the target database. A loader is used by
+ * a single table worker and holds on to its {@link BulkLoadSession} until it is closed.
+ */
+interface TableLoader extends AutoCloseable {
+    /**
+     * @return whether all records loaded so far are committed on the target, rather than only when a later batch is
+     * loaded or when the loader is closed.
+     */
+    boolean load(Result<Record> records) throws Exception;
+
+    /**
+     * Loads up to {@code maxRows} rows read straight from the source, for {@code --direct-transfer}.
+     *
+     * @return the same as {@link #load(Result)}, or {@code false} if there were no rows left to load.
+     */
+    boolean load(SourceRows rows, int maxRows) throws Exception;
+
+    /**
+     * Completes the load, verifies that the target database accepted every record handed to {@link #load(Result)}, and
+     * commits them.
+     */
+    @Override
+    void close() throws Exception;
+}
@@ -24,32 +24,42 @@ import java.io.IOException;
 import java.io.Writer;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import static com.thoughtworks.go.dbsync.DbSync.LOG;
 
 class Util {
     private static final String SQL_STMT_TERMINATE = ";\n";
 
-    static BasicDataSource createDataSource(String sourceDriverClass, String sourceUrl, String sourceUser, String sourcePassword) {
+    static BasicDataSource createDataSource(String sourceDriverClass, String sourceUrl, String sourceUser, String sourcePassword, int maxConnections) {
         BasicDataSource dataSource = new BasicDataSource();
         dataSource.setDriverClassName(sourceDriverClass);
         if (sourceDriverClass.equals(Driver.class.getName()) || sourceUrl.startsWith("jdbc:postgresql:")) {
-            dataSource.setConnectionProperties("preferQueryMode=extendedCacheEverything");
+            dataSource.setConnectionProperties("preferQueryMode=extendedCacheEverything;reWriteBatchedInserts=true");
+        }
+        if (sourceDriverClass.equals(com.mysql.cj.jdbc.Driver.class.getName()) || sourceUrl.startsWith("jdbc:mysql:")) {
+            dataSource.setConnectionProperties("rewriteBatchedStatements=true");
         }
         dataSource.setUrl(sourceUrl);
         dataSource.setUsername(sourceUser);
         dataSource.setPassword(sourcePassword);
-        dataSource.setMaxTotal(32);
+        dataSource.setMaxTotal(maxConnections);
+        dataSource.setMaxIdle(maxConnections);
+        dataSource.setAccessToUnderlyingConnectionAllowed(true);
+        dataSource.setPoolPreparedStatements(true);
         return dataSource;
     }
 
     static void comment(Writer writer, String string) throws IOException {
         if (writer != null) {
-            writer.append("--\n");
-            writer.append("-- ").append(string).append("\n");
-            writer.append("--\n");
+            synchronized (writer) {
+                writer.append("--\n");
+                writer.append("-- ").append(string).append("\n");
+                writer.append("--\n");
+            }
         }
     }
 
@@ -65,8 +75,9 @@ class Util {
     private static void write(Writer writer, String sql) {
         long currentTime = System.currentTimeMillis();
         try {
-            writer.append(sql).append(SQL_STMT_TERMINATE);
-            writer.flush();
+            synchronized (writer) {
+                writer.append(sql).append(SQL_STMT_TERMINATE);
+            }
         } catch (Exception e) {
             LOG.error(null, e);
             throw new RuntimeException(e);
@@ -80,8 +91,8 @@ class Util {
         long currentTime = System.currentTimeMillis();
         LOG.debug("Executing SQL: {}", sql.substring(0, Math.min(sql.length(), 100)));
         try {
-            try (Connection connection = targetDataSource.getConnection()) {
-                connection.createStatement().execute(sql);
+            try (Connection connection = targetDataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute(sql);
             }
         } catch (SQLException e) {
             LOG.error(null, e);
@@ -91,6 +102,21 @@ class Util {
         LOG.debug("Took {}ms to execute SQL: {}", endTime - currentTime, sql.substring(0, Math.min(sql.length(), 100)));
     }
 
+    /**
+     * Virtual threads are only available from Java 21, while the migrator is built for Java 17, so their executor is
+     * looked up reflectively. Falls back to a pool of {@code threads} platform threads.
+     */
+    static ExecutorService newExecutor(int threads, boolean virtualThreads, ThreadFactory platformThreadFactory) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Virtual threads are not available on Java {}, using platform threads.", Runtime.version().feature());
+            }
+        }
+        return Executors.newFixedThreadPool(threads, platformThreadFactory);
+    }
+
     static void withDataSource(BasicDataSource dataSource, ThrowingConsumer<Connection> consumer) {
         try (Connection connection = dataSource.getConnection()) {
             try {
@@ -104,36 +130,4 @@ class Util {
             throw new RuntimeException(e);
         }
     }
-
-    static class LinkedQueue<T> extends LinkedBlockingQueue<T> {
-        LinkedQueue(int capacity) {
-            super(capacity);
-        }
-
-        @Override
-        public boolean offer(T o) {
-            try {
-                put(o);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            return true;
-        }
-
-        @Override
-        public boolean add(T o) {
-            try {
-                put(o);
-                return true;
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        @Override
-        public boolean offer(T o, long timeout, TimeUnit unit) throws InterruptedException {
-            put(o);
-            return true;
-        }
-    }
 }
@@ -19,6 +19,8 @@ package com.thoughtworks.go.dbsync.cli;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Parameters(separators = "=")
@@ -53,18 +55,159 @@ public class Args {
     @Parameter(names = "--batch-size", description = "The number of records to SELECT from source database and INSERT into target database in each batch.", order = 1000)
     public int batchSize = 100_000;
 
-    @Parameter(names = {"-o", "--output"}, description = "The output SQL file. Specify `.gz` extension to enable gzip compression.", order = 1100)
+    @Parameter(names = "--read-mode", description = "How records are read from the source database. `seek` runs one query per batch of `--batch-size` records, `stream` runs a single query per table and streams its results in chunks of `--fetch-size` records, using constant memory.", order = 1010)
+    public ReadMode readMode = ReadMode.SEEK;
+
+    @Parameter(names = "--fetch-size", description = "The number of records fetched from the source database in each round trip, and handed to the target database in each batch, when `--read-mode=stream` is specified.", order = 1020)
+    public int fetchSize = 1_000;
+
+    @Parameter(names = "--adaptive-batch-size", description = "Adapt the number of records in each batch for every table, based on the observed throughput and size of records. `--batch-size` (or `--fetch-size` with `--read-mode=stream`) becomes the largest number of records in a batch.", order = 1030)
+    public boolean adaptiveBatchSize = false;
+
+    @Parameter(names = "--max-batch-bytes", description = "The approximate largest size of a batch in bytes, when `--adaptive-batch-size` is specified.", order = 1040)
+    public long maxBatchBytes = 64L * 1024 * 1024;
+
+    @Parameter(names = {"-o", "--output"}, description = "The output SQL file. Specify `.gz` extension to enable gzip compression, or `.zst` extension to enable zstd compression.", order = 1100)
     public String outputFile;
 
+    @Parameter(names = "--output-dir", description = "The output directory. Each phase and each id range of a table is written to its own SQL file, in parallel, and the files are listed in `manifest.json` with their id ranges, record counts and checksums.", order = 1105)
+    public String outputDir;
+
+    @Parameter(names = "--output-compression", description = "Compression of the SQL files written to `--output-dir`: `none`, `gzip` or `zstd`.", order = 1106)
+    public OutputCompression outputCompression = OutputCompression.GZIP;
+
+    @Parameter(names = "--output-format", description = "Format of the record files written to `--output-dir`: `sql` writes inlined INSERT statements, `binary` writes typed binary rows, which are faster to write and to load using `--replay`, but cannot be loaded by other tools.", order = 1107)
+    public OutputFormat outputFormat = OutputFormat.SQL;
+
+    @Parameter(names = "--compression-threads", description = "Number of threads used to compress the output SQL file. Defaults to number of processors (max of 4).", order = 1110)
+    public int compressionThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    @Parameter(names = "--replay", description = "Load a SQL file written by `--output`, or a directory written by `--output-dir`, into the target database, instead of copying records from the source database. Records are loaded using `--threads` connections.", order = 1150)
+    public String replay;
+
     @Parameter(names = {"--insert", "-i"}, description = "Perform INSERT into target database.", order = 1200)
     public boolean insert = false;
 
+    @Parameter(names = "--load-mode", description = "How records are loaded into the target database when `--insert` is specified. `batch` runs a prepared INSERT statement as JDBC batches, `insert` runs inlined multi-row INSERT statements, `copy` streams records using `COPY ... FROM STDIN` (PostgreSQL only).", order = 1250)
+    public LoadMode loadMode = LoadMode.BATCH;
+
+    @Parameter(names = "--commit-every", description = "Commit records loaded by `--load-mode=batch` or `--load-mode=copy` every this many batches. Defaults to every batch for `batch`, and once per table for `copy`.", order = 1260)
+    public int commitEvery = 0;
+
+    @Parameter(names = "--bulk-load-profile", description = "Relax durability settings of the target database while records are copied, e.g. `synchronous_commit` on PostgreSQL, or `unique_checks`, `foreign_key_checks` and `innodb_flush_log_at_trx_commit` on MySQL. The settings are reverted before indices are created. The original values of global settings are recorded in the checkpoint journal, so that `--resume` reverts them to those values after a migration that was killed.", order = 1270)
+    public boolean bulkLoadProfile = false;
+
+    @Parameter(names = "--unlogged-tables", description = "Make tables UNLOGGED while records are copied, and LOGGED again before indices are created (PostgreSQL only). Records copied into unlogged tables are lost if the target database server crashes, so start over rather than `--resume` in that case.", order = 1280)
+    public boolean unloggedTables = false;
+
     @Parameter(names = {"--progress", "-p"}, description = "Show progress of the export operation", order = 1300)
     public boolean progress = false;
 
     @Parameter(names = {"--threads", "-t"}, description = "Number of import threads. Defaults to number of processors (max of 8).", order = 1400)
     public int threads = Math.min(8, Runtime.getRuntime().availableProcessors());
 
+    @Parameter(names = "--virtual-threads", description = "Run the import threads and the stages of `--pipeline` on virtual threads, so that `--threads` can be much larger than the number of processors, with the number of connections in use bounded by `--source-connections` and `--target-connections`. Requires Java 21, import threads are platform threads on older versions.", order = 1410)
+    public boolean virtualThreads = false;
+
+    @Parameter(names = "--source-connections", description = "Maximum number of source database connections used at the same time to read records, or to verify them.", order = 1420)
+    public int sourceConnections = 32;
+
+    @Parameter(names = "--target-connections", description = "Maximum number of target database connections used at the same time to write records, or to verify them. With `--pipeline`, each writer thread uses a connection.", order = 1430)
+    public int targetConnections = 32;
+
+    @Parameter(names = "--split-rows", description = "Tables with more records than this are split into id ranges of about this many records, which are copied in parallel. Specify 0 to copy each table using a single thread.", order = 1450)
+    public long splitRows = 1_000_000;
+
+    @Parameter(names = "--direct-transfer", description = "Move the values of each record from the source result set straight into the target, using column readers chosen once per range from the result set metadata, instead of building an intermediate record for every row. Requires `--insert` with `--load-mode=batch` or `copy`, and cannot be used with `--output`, `--output-dir` or `--pipeline`.", order = 1455)
+    public boolean directTransfer = false;
+
+    @Parameter(names = "--pipeline", description = "Copy each table using separate reader, converter and writer threads connected by bounded queues, so that the next batch is read from the source database while the previous batch is written to the target database.", order = 1460)
+    public boolean pipeline = false;
+
+    @Parameter(names = "--pipeline-queue-size", description = "The number of batches that may be queued between two stages of the copy pipeline.", order = 1470)
+    public int pipelineQueueSize = 2;
+
+    @Parameter(names = "--convert-threads", description = "Number of threads per table that convert batches read from the source database, when `--pipeline` is specified.", order = 1480)
+    public int convertThreads = 1;
+
+    @Parameter(names = "--write-threads", description = "Number of threads per table that write batches to the target database, when `--pipeline` is specified. Each writer thread uses its own target database connection.", order = 1490)
+    public int writeThreads = 1;
+
+    @Parameter(names = "--resume", description = "Resume a migration that did not complete, using the checkpoint journal in the `dumps` directory. Completed phases and copied tables are skipped, and partially copied tables continue after the last committed batch.", order = 1495)
+    public boolean resume = false;
+
+    @Parameter(names = "--sync-incremental", description = "Copy records in several passes, while the GoCD server using the source database is still running. The first pass copies all records. Subsequent passes on the same target database only copy records added since the previous pass. Sequences, indices and constraints are only created by the final pass, see `--sync-final`.", order = 1511)
+    public boolean syncIncremental = false;
+
+    @Parameter(names = "--sync-final", description = "Mark this as the final pass of `--sync-incremental`, to be run once the GoCD server is stopped. Creates sequences, indices and constraints, and verifies the copied records.", order = 1512)
+    public boolean syncFinal = false;
+
+    @Parameter(names = "--sync-mutable-tables", description = "Tables whose recent records may be updated by the GoCD server. The last `--sync-tail-window` ids of these tables are copied again in every pass of `--sync-incremental`.", order = 1513)
+    public List<String> syncMutableTables = new ArrayList<>(List.of("STAGES", "BUILDS", "PIPELINESTATES"));
+
+    @Parameter(names = "--sync-tail-window", description = "The number of ids at the end of mutable tables that are copied again in every pass of `--sync-incremental`.", order = 1514)
+    public long syncTailWindow = 10_000;
+
+    @Parameter(names = "--sync-full-copy-rows", description = "Tables with at most this many records are copied in full in every pass of `--sync-incremental`, since any of their records may have been updated.", order = 1515)
+    public long syncFullCopyRows = 100_000;
+
+    @Parameter(names = "--index-threads", description = "Number of target database connections used to build indices and constraints concurrently, when `--insert` is specified. Foreign keys are built once the indices on their tables exist. Specify 1 to let Liquibase build them one at a time.", order = 1505)
+    public int indexThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    @Parameter(names = "--index-memory-mb", description = "Memory for each index build, in MB. Sets `maintenance_work_mem` on PostgreSQL and `innodb_ddl_buffer_size` on MySQL 8.0.27+.", order = 1506)
+    public int indexMemoryMb = 256;
+
+    @Parameter(names = "--index-parallel-workers", description = "Number of database worker threads for each index build. Sets `max_parallel_maintenance_workers` on PostgreSQL 11+ and `innodb_ddl_threads` on MySQL 8.0.27+.", order = 1507)
+    public int indexParallelWorkers = 2;
+
+    @Parameter(names = "--verify", description = "How copied records are verified when `--insert` is specified. `count` compares the number of records in each table, `checksum` compares a checksum of the records in each id range, and reports the ids of records that differ.", order = 1508)
+    public VerifyMode verify = VerifyMode.COUNT;
+
+    @Parameter(names = "--status-interval", description = "Seconds between updates of `dumps/status.json`, which reports the progress and throughput of a run while it is in progress. Specify 0 to disable. A run report with the wall time of each phase, the throughput of each table and latency percentiles of each step of a batch is written to `dumps/report.json` at the end of the run, including runs that failed.", order = 1509)
+    public long statusIntervalSeconds = 10;
+
     @Parameter(names = {"--export-timeout"}, description = "Number of seconds to allow data to be exported from source to target database before timing out.", order = 1500)
     public long exportTimeoutSeconds = TimeUnit.MINUTES.toSeconds(30);
+
+    @Parameter(names = "--jfr", description = "Record Java Flight Recorder events, including events for every batch of records fetched, rendered and executed, to `dumps/migration.jfr`.", order = 1520)
+    public boolean jfr = false;
+
+    public enum ReadMode {
+        SEEK,
+        STREAM
+    }
+
+    public enum LoadMode {
+        BATCH,
+        INSERT,
+        COPY
+    }
+
+    public enum OutputCompression {
+        NONE(""),
+        GZIP(".gz"),
+        ZSTD(".zst");
+
+        public final String extension;
+
+        OutputCompression(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public enum OutputFormat {
+        SQL(".sql"),
+        BINARY(".rows");
+
+        public final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public enum VerifyMode {
+        COUNT,
+        CHECKSUM
+    }
 }
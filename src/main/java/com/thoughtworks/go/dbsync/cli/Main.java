@@ -35,6 +35,11 @@ public class Main {
 
             if (args.help) {
                 printUsageAndExit(commander);
+            } else if (!isBlank(args.replay)) {
+                validateDbDriverClass(args, commander);
+                validateConnections(args, commander);
+
+                new DbSync(args).replay();
             } else {
                 if (isBlank(args.outputFile) && !args.insert) {
                     commander.getConsole().println("ERROR: At least one of `--output` or `--insert` options must be specified.");
@@ -42,6 +47,11 @@ public class Main {
                 }
 
                 validateDbDriverClass(args, commander);
+                validateOutput(args, commander);
+                validateLoadMode(args, commander);
+                validateResume(args, commander);
+                validateSyncIncremental(args, commander);
+                validateConnections(args, commander);
 
                 new DbSync(args).export();
             }
@@ -87,6 +97,57 @@ public class Main {
         }
     }
 
+    private static void validateOutput(Args args, JCommander commander) {
+        if (!isBlank(args.outputFile) && !isBlank(args.outputDir)) {
+            commander.getConsole().println("ERROR: Only one of `--output` and `--output-dir` can be specified.");
+            printUsageAndExit(commander);
+        }
+        if (args.outputFormat == Args.OutputFormat.BINARY && isBlank(args.outputDir)) {
+            commander.getConsole().println("ERROR: `--output-format=binary` can only be used with `--output-dir`.");
+            printUsageAndExit(commander);
+        }
+    }
+
+    private static void validateLoadMode(Args args, JCommander commander) {
+        if (args.loadMode == Args.LoadMode.COPY && !isPostgresqlUrl(args.targetDbUrl)) {
+            commander.getConsole().println("ERROR: `--load-mode=copy` is only supported for PostgreSQL target databases.");
+            printUsageAndExit(commander);
+        }
+        if (args.unloggedTables && !isPostgresqlUrl(args.targetDbUrl)) {
+            commander.getConsole().println("ERROR: `--unlogged-tables` is only supported for PostgreSQL target databases.");
+            printUsageAndExit(commander);
+        }
+        if (args.directTransfer && (!args.insert || args.loadMode == Args.LoadMode.INSERT || args.pipeline || !isBlank(args.outputFile) || !isBlank(args.outputDir))) {
+            commander.getConsole().println("ERROR: `--direct-transfer` can only be used with `--insert` and `--load-mode=batch` or `copy`, and without `--output`, `--output-dir` or `--pipeline`.");
+            printUsageAndExit(commander);
+        }
+    }
+
+    private static void validateResume(Args args, JCommander commander) {
+        if (args.resume && (!args.insert || !isBlank(args.outputFile) || !isBlank(args.outputDir))) {
+            commander.getConsole().println("ERROR: `--resume` can only be used with `--insert`, and without `--output` or `--output-dir`.");
+            printUsageAndExit(commander);
+        }
+    }
+
+    private static void validateConnections(Args args, JCommander commander) {
+        if (args.sourceConnections < 1 || args.targetConnections < 1) {
+            commander.getConsole().println("ERROR: `--source-connections` and `--target-connections` must be at least 1.");
+            printUsageAndExit(commander);
+        }
+    }
+
+    private static void validateSyncIncremental(Args args, JCommander commander) {
+        if (args.syncFinal && !args.syncIncremental) {
+            commander.getConsole().println("ERROR: `--sync-final` can only be used with `--sync-incremental`.");
+            printUsageAndExit(commander);
+        }
+        if (args.syncIncremental && (!args.insert || !isBlank(args.outputFile) || !isBlank(args.outputDir))) {
+            commander.getConsole().println("ERROR: `--sync-incremental` can only be used with `--insert`, and without `--output` or `--output-dir`.");
+            printUsageAndExit(commander);
+        }
+    }
+
     private static void validateOrDefaultSourceDBDriverClass(Args args, JCommander commander, String driver, String dbType) {
         if (isBlank(args.sourceDbDriverClass)) {
             commander.getConsole().println("INFO: No `--source-db-driver-class` is specified. Setting `--source-db-driver-class='" + driver + "'`.");
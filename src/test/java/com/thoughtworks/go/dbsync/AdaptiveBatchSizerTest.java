@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveBatchSizerTest {
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void shouldSizeBatchesFromTheEstimatedRecordSizeAfterTheFirstBatch() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("PIPELINES", 100_000, 4_000_000);
+        assertEquals(1_000, batchSizer.nextBatchSize());
+
+        batchSizer.batchCompleted(1_000, 1_000_000, ONE_SECOND);
+
+        assertEquals(1_000, batchSizer.nextBatchSize());
+    }
+
+    @Test
+    void shouldGrowBatchesAdditivelyAndShrinkThemMultiplicatively() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("MODIFIEDFILES", 100_000, 1_000_000_000);
+        batchSizer.batchCompleted(1_000, 100_000, ONE_SECOND);
+        assertEquals(100_000, batchSizer.nextBatchSize());
+
+        batchSizer.batchCompleted(100_000, 10_000_000, 10 * ONE_SECOND);
+        assertEquals(50_000, batchSizer.nextBatchSize());
+
+        batchSizer.batchCompleted(50_000, 5_000_000, ONE_SECOND);
+        assertEquals(55_000, batchSizer.nextBatchSize());
+    }
+
+    @Test
+    void shouldNotExceedTheRowCap() {
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer("VERSIONINFOS", 500, 1_000_000_000);
+        assertEquals(500, batchSizer.nextBatchSize());
+
+        batchSizer.batchCompleted(500, 5_000, ONE_SECOND);
+        batchSizer.batchCompleted(500, 5_000, ONE_SECOND);
+
+        assertEquals(500, batchSizer.nextBatchSize());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryRowWriterTest {
+
+    @Test
+    void shouldReadBackRowsOfEveryColumnType() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryRowWriter writer = new BinaryRowWriter(bytes, "BUILDS")) {
+            writer.writeHeader(
+                    new String[]{"ID", "NAME", "SCHEDULEDDATE", "DURATION", "ARTIFACTS", "IGNORED", "DAY"},
+                    new Class<?>[]{Long.class, String.class, Timestamp.class, BigDecimal.class, byte[].class, Boolean.class, Date.class});
+            writer.writeRow(new Object[]{1L, "linux-firefox", Timestamp.valueOf("2020-05-01 10:20:30.123456"), new BigDecimal("-12.50"), new byte[]{1, 2}, true, Date.valueOf("1969-12-31")});
+            writer.writeRow(new Object[]{2L, null, null, null, null, null, null});
+        }
+
+        try (BinaryRowReader reader = new BinaryRowReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("BUILDS", reader.table());
+            assertArrayEquals(new String[]{"ID", "NAME", "SCHEDULEDDATE", "DURATION", "ARTIFACTS", "IGNORED", "DAY"}, reader.columnNames());
+
+            Object[] first = reader.next();
+            assertEquals(1L, first[0]);
+            assertEquals("linux-firefox", first[1]);
+            assertEquals(Timestamp.valueOf("2020-05-01 10:20:30.123456"), first[2]);
+            assertEquals(new BigDecimal("-12.50"), first[3]);
+            assertArrayEquals(new byte[]{1, 2}, (byte[]) first[4]);
+            assertEquals(true, first[5]);
+            assertEquals(Date.valueOf("1969-12-31"), first[6]);
+
+            assertArrayEquals(new Object[]{2L, null, null, null, null, null, null}, reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void shouldWriteHeaderForRangeWithoutRecords() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BinaryRowWriter(bytes, "PIPELINES").close();
+
+        try (BinaryRowReader reader = new BinaryRowReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("PIPELINES", reader.table());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void shouldRejectFilesThatAreNotBinaryRows() {
+        assertThrows(IOException.class, () -> new BinaryRowReader(new ByteArrayInputStream("INSERT INTO builds".getBytes())));
+    }
+}
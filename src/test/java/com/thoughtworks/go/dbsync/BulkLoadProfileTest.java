@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.SQLDialect;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadProfileTest {
+    private static final List<String> TABLES = List.of("PIPELINES", "MODIFICATIONS");
+
+    @TempDir
+    File tempDir;
+
+    private final FakeTargetDatabase database = new FakeTargetDatabase();
+
+    @Test
+    void shouldRelaxAndRevertGlobalSettings() throws Exception {
+        database.settings.put("GLOBAL.innodb_flush_log_at_trx_commit", "1");
+
+        try (CheckpointJournal journal = journal(false)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.MYSQL, true, false);
+
+            profile.begin(TABLES);
+            assertEquals("2", database.settings.get("GLOBAL.innodb_flush_log_at_trx_commit"));
+            assertEquals("1", journal.originalSetting("innodb_flush_log_at_trx_commit"));
+
+            profile.end(TABLES);
+            assertEquals("1", database.settings.get("GLOBAL.innodb_flush_log_at_trx_commit"));
+        }
+    }
+
+    @Test
+    void shouldRevertGlobalSettingsToTheValuesRecordedBeforeAKilledRun() throws Exception {
+        database.settings.put("GLOBAL.innodb_flush_log_at_trx_commit", "1");
+
+        try (CheckpointJournal journal = journal(false)) {
+            new BulkLoadProfile(database.dataSource(), journal, SQLDialect.MYSQL, true, false).begin(TABLES);
+        }
+        assertEquals("2", database.settings.get("GLOBAL.innodb_flush_log_at_trx_commit"));
+
+        try (CheckpointJournal journal = journal(true)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.MYSQL, true, false);
+            profile.begin(TABLES);
+            profile.end(TABLES);
+        }
+        assertEquals("1", database.settings.get("GLOBAL.innodb_flush_log_at_trx_commit"));
+    }
+
+    @Test
+    void shouldSkipSettingsThatCannotBeChanged() throws Exception {
+        database.settings.putAll(Map.of("GLOBAL.innodb_flush_log_at_trx_commit", "1", "SESSION.unique_checks", "1", "SESSION.foreign_key_checks", "1"));
+        database.readOnly.add("GLOBAL.innodb_flush_log_at_trx_commit");
+        database.readOnly.add("SESSION.unique_checks");
+
+        try (CheckpointJournal journal = journal(false)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.MYSQL, true, false);
+            profile.begin(TABLES);
+
+            assertEquals(Map.of("foreign_key_checks", "1"), profile.applySessionSettings(database.dataSource().getConnection()));
+            assertEquals(Set.of("foreign_key_checks"), profile.applySessionSettings(database.dataSource().getConnection()).keySet());
+            assertEquals(1, database.executed.stream().filter(sql -> sql.startsWith("SET SESSION unique_checks")).count());
+            assertEquals("0", database.settings.get("SESSION.foreign_key_checks"));
+
+            profile.end(TABLES);
+            assertEquals("1", database.settings.get("GLOBAL.innodb_flush_log_at_trx_commit"));
+        }
+    }
+
+    @Test
+    void shouldNotChangeSettingsUnlessRelaxed() throws Exception {
+        try (CheckpointJournal journal = journal(false)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.MYSQL, false, false);
+            profile.begin(TABLES);
+            assertTrue(profile.applySessionSettings(database.dataSource().getConnection()).isEmpty());
+            profile.end(TABLES);
+        }
+
+        assertTrue(database.executed.isEmpty());
+    }
+
+    @Test
+    void shouldMakeTablesUnloggedWhileRecordsAreCopied() throws Exception {
+        try (CheckpointJournal journal = journal(false)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.POSTGRES, false, true);
+
+            profile.begin(TABLES);
+            assertEquals(List.of("ALTER TABLE PIPELINES SET UNLOGGED", "ALTER TABLE MODIFICATIONS SET UNLOGGED"), database.executed);
+
+            database.executed.clear();
+            profile.end(TABLES);
+            assertEquals(List.of("ALTER TABLE PIPELINES SET LOGGED", "ALTER TABLE MODIFICATIONS SET LOGGED"), database.executed.subList(0, 2));
+        }
+    }
+
+    private CheckpointJournal journal(boolean resume) throws Exception {
+        return new CheckpointJournal(new File(tempDir, "checkpoint.journal"), resume);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.SQLDialect;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadSessionTest {
+    @TempDir
+    File tempDir;
+
+    private final FakeTargetDatabase database = new FakeTargetDatabase();
+
+    @Test
+    void shouldApplySessionSettingsAndRevertThemWhenClosed() throws Exception {
+        database.settings.put("SESSION.synchronous_commit", "on");
+
+        try (CheckpointJournal journal = new CheckpointJournal(new File(tempDir, "checkpoint.journal"), false)) {
+            BulkLoadProfile profile = new BulkLoadProfile(database.dataSource(), journal, SQLDialect.POSTGRES, true, false);
+            try (BulkLoadSession ignored = new BulkLoadSession(database.dataSource(), profile, 0)) {
+                assertEquals("off", database.settings.get("SESSION.synchronous_commit"));
+                assertFalse(database.autoCommit);
+            }
+        }
+
+        assertEquals("on", database.settings.get("SESSION.synchronous_commit"));
+        assertEquals(1, database.rollbacks);
+        assertTrue(database.autoCommit);
+        assertTrue(database.closed);
+    }
+
+    @Test
+    void shouldCommitEveryFewBatches() throws Exception {
+        try (CheckpointJournal journal = new CheckpointJournal(new File(tempDir, "checkpoint.journal"), false);
+             BulkLoadSession session = new BulkLoadSession(database.dataSource(), new BulkLoadProfile(database.dataSource(), journal, SQLDialect.POSTGRES, false, false), 2)) {
+            assertFalse(session.commitDue());
+            assertTrue(session.commitDue());
+            session.commit();
+            assertFalse(session.commitDue());
+            assertEquals(1, database.commits);
+        }
+    }
+
+    @Test
+    void shouldOnlyCommitOnceLoadedWhenCommittingEveryBatchIsOff() throws Exception {
+        try (CheckpointJournal journal = new CheckpointJournal(new File(tempDir, "checkpoint.journal"), false);
+             BulkLoadSession session = new BulkLoadSession(database.dataSource(), new BulkLoadProfile(database.dataSource(), journal, SQLDialect.POSTGRES, false, false), 0)) {
+            assertFalse(session.commitDue());
+            assertFalse(session.commitDue());
+        }
+    }
+
+    @Test
+    void shouldUseAutoCommitWhenCommittingEveryBatch() throws Exception {
+        try (CheckpointJournal journal = new CheckpointJournal(new File(tempDir, "checkpoint.journal"), false);
+             BulkLoadSession session = new BulkLoadSession(database.dataSource(), new BulkLoadProfile(database.dataSource(), journal, SQLDialect.POSTGRES, false, false), 1)) {
+            assertTrue(database.autoCommit);
+            assertTrue(session.commitDue());
+            session.commit();
+            assertEquals(0, database.commits);
+        }
+        assertEquals(0, database.rollbacks);
+    }
+}
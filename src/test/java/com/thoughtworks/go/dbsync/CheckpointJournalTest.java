@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointJournalTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void shouldResumeFromCompletedPhasesAndCommittedBatches() throws Exception {
+        File file = new File(tempDir, "checkpoint.journal");
+        IdRange first = new IdRange("MODIFICATIONS", 100, 0, 100L);
+        IdRange second = new IdRange("MODIFICATIONS", 100, 100, null);
+
+        try (CheckpointJournal journal = new CheckpointJournal(file, false)) {
+            journal.phaseDone("createSchema");
+            journal.rangesPlanned(List.of(first, second));
+
+            CheckpointJournal.RangeCheckpoint checkpoint = journal.rangeCheckpoint(first);
+            checkpoint.batchRead(10);
+            checkpoint.batchRead(20);
+            checkpoint.batchRead(30);
+            checkpoint.batchCommitted(10);
+            checkpoint.batchCommitted(30);
+
+            journal.rangeCheckpoint(second).done();
+        }
+
+        try (CheckpointJournal journal = new CheckpointJournal(file, true)) {
+            assertTrue(journal.isPhaseDone("createSchema"));
+            assertFalse(journal.isPhaseDone("createView"));
+            assertEquals(2, journal.plannedRanges().size());
+            assertEquals(10, journal.resumeAfterId(first));
+            assertFalse(journal.isRangeDone(first));
+            assertTrue(journal.isRangeDone(second));
+        }
+    }
+
+    @Test
+    void shouldIgnoreRangesOfAnIncompletePlan() throws Exception {
+        File file = new File(tempDir, "checkpoint.journal");
+        Files.writeString(file.toPath(), "phase createSchema\nrange PIPELINES 0 - 10\nrange MODIFI", StandardCharsets.UTF_8, StandardOpenOption.CREATE);
+
+        try (CheckpointJournal journal = new CheckpointJournal(file, true)) {
+            assertTrue(journal.isPhaseDone("createSchema"));
+            assertFalse(journal.isPhaseDone("plan"));
+            assertTrue(journal.plannedRanges().isEmpty());
+        }
+    }
+}
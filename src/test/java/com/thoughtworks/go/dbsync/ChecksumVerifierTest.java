@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ChecksumVerifierTest {
+
+    @Test
+    void shouldNormalizeValuesReadUsingDifferentDrivers() {
+        assertEquals(ChecksumVerifier.normalize(true), ChecksumVerifier.normalize((byte) 1));
+        assertEquals(ChecksumVerifier.normalize(42L), ChecksumVerifier.normalize(42));
+        assertEquals(ChecksumVerifier.normalize(new BigDecimal("1.50")), ChecksumVerifier.normalize(1.5d));
+        assertEquals(ChecksumVerifier.normalize(BigDecimal.ZERO), ChecksumVerifier.normalize(new BigDecimal("0.000")));
+        assertEquals("2020-05-01T10:20:30.500", ChecksumVerifier.normalize(Timestamp.valueOf("2020-05-01 10:20:30.5")));
+    }
+
+    @Test
+    void shouldHashTruncatedValuesDifferently() {
+        assertNotEquals(
+                ChecksumVerifier.hash(new Object[]{1L, Timestamp.valueOf("2020-05-01 10:20:30.5")}),
+                ChecksumVerifier.hash(new Object[]{1L, Timestamp.valueOf("2020-05-01 10:20:30")}));
+        assertNotEquals(ChecksumVerifier.hash(new Object[]{1L, "ab", "c"}), ChecksumVerifier.hash(new Object[]{1L, "a", "bc"}));
+        assertNotEquals(ChecksumVerifier.hash(new Object[]{1L, null}), ChecksumVerifier.hash(new Object[]{1L, ""}));
+        assertEquals(ChecksumVerifier.hash(new Object[]{1L, "text"}), ChecksumVerifier.hash(new Object[]{1, "text"}));
+    }
+
+    @Test
+    void shouldReportRecordsThatDifferBetweenSourceAndTarget() throws Exception {
+        JdbcDataSource source = dataSource("checksum-source");
+        JdbcDataSource target = dataSource("checksum-target");
+
+        // the in-memory databases live as long as a connection to them is open
+        try (Connection sourceConnection = source.getConnection(); Connection targetConnection = target.getConnection()) {
+            for (Connection connection : List.of(sourceConnection, targetConnection)) {
+                execute(connection, "CREATE TABLE MODIFICATIONS (ID BIGINT PRIMARY KEY, REVISION VARCHAR(255))");
+                execute(connection, "INSERT INTO MODIFICATIONS (ID, REVISION) SELECT X, 'r' || X FROM SYSTEM_RANGE(1, 4000)");
+            }
+            execute(targetConnection, "UPDATE MODIFICATIONS SET REVISION = 'changed' WHERE ID = 1500");
+            execute(targetConnection, "DELETE FROM MODIFICATIONS WHERE ID = 3700");
+
+            try (ChecksumVerifier verifier = new ChecksumVerifier(source, target, 500)) {
+                assertEquals(List.of(
+                        "Record with id 1500 in table MODIFICATIONS differs between source and target",
+                        "Record with id 3700 in table MODIFICATIONS is missing on target"
+                ), verifier.verify(IdRange.wholeTable("MODIFICATIONS", 4000)));
+
+                execute(targetConnection, "UPDATE MODIFICATIONS SET REVISION = 'r1500' WHERE ID = 1500");
+                execute(targetConnection, "INSERT INTO MODIFICATIONS (ID, REVISION) VALUES (3700, 'r3700')");
+                assertEquals(List.of(), verifier.verify(IdRange.wholeTable("MODIFICATIONS", 4000)));
+            }
+        }
+    }
+
+    private static JdbcDataSource dataSource(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+        return dataSource;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbSyncTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void shouldNotJournalTheCopyPhaseAsDoneWhenARangeFails() throws Exception {
+        File file = new File(tempDir, "checkpoint.journal");
+        IdRange first = new IdRange("MODIFICATIONS", 300, 0, 100L);
+        IdRange failing = new IdRange("MODIFICATIONS", 200, 100, 200L);
+        IdRange last = new IdRange("MODIFICATIONS", 100, 200, null);
+        IdRangeScheduler scheduler = new IdRangeScheduler(List.of(first, failing, last), Map.of(), 1);
+        List<IdRange> copied = Collections.synchronizedList(new ArrayList<>());
+
+        try (CheckpointJournal journal = new CheckpointJournal(file, false)) {
+            assertThrows(RuntimeException.class, () -> DbSync.phase(journal, new RunMetrics(), "copy", () ->
+                    DbSync.inParallel(scheduler, 1, false, 60, idRange -> {
+                        if (idRange == failing) {
+                            throw new SQLException("Connection reset");
+                        }
+                        copied.add(idRange);
+                    })));
+        }
+
+        assertEquals(List.of(first), copied);
+        try (CheckpointJournal journal = new CheckpointJournal(file, true)) {
+            assertFalse(journal.isPhaseDone("copy"));
+        }
+    }
+
+    @Test
+    void shouldJournalTheCopyPhaseAsDoneWhenAllRangesAreCopied() throws Exception {
+        File file = new File(tempDir, "checkpoint.journal");
+        IdRangeScheduler scheduler = new IdRangeScheduler(List.of(IdRange.wholeTable("AGENTS", 10), IdRange.wholeTable("PIPELINES", 20)), Map.of(), 2);
+        List<IdRange> copied = Collections.synchronizedList(new ArrayList<>());
+
+        try (CheckpointJournal journal = new CheckpointJournal(file, false)) {
+            DbSync.phase(journal, new RunMetrics(), "copy", () -> DbSync.inParallel(scheduler, 2, false, 60, copied::add));
+        }
+
+        assertEquals(2, copied.size());
+        try (CheckpointJournal journal = new CheckpointJournal(file, true)) {
+            assertTrue(journal.isPhaseDone("copy"));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.jooq.Record;
+import org.jooq.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectTransferTest {
+    private Connection connection;
+    private final RecordingLoader loader = new RecordingLoader();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+        execute("CREATE TABLE MODIFICATIONS (ID BIGINT PRIMARY KEY, REVISION VARCHAR(255))");
+        execute("INSERT INTO MODIFICATIONS (ID, REVISION) SELECT X, 'r' || X FROM SYSTEM_RANGE(1, 25)");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void shouldStopSeekingAfterAShortBatch() throws Exception {
+        try (DirectTransfer transfer = new DirectTransfer(connection, IdRange.wholeTable("MODIFICATIONS", 25), true, 10, BatchSizer.fixed(10))) {
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            SourceRows rows = transfer.nextBatch(loader);
+            assertEquals(5, rows.batchRows());
+            assertEquals(25, rows.lastId());
+            assertTrue(rows.batchReadNanos() > 0);
+
+            // a short batch is the end of the range, even if records were added after it
+            execute("INSERT INTO MODIFICATIONS (ID, REVISION) SELECT X, 'r' || X FROM SYSTEM_RANGE(26, 30)");
+            assertNull(transfer.nextBatch(loader));
+        }
+
+        assertEquals(ids(1, 25), loader.ids);
+    }
+
+    @Test
+    void shouldSeekWithinTheBoundsOfTheRange() throws Exception {
+        try (DirectTransfer transfer = new DirectTransfer(connection, new IdRange("MODIFICATIONS", 20, 0, 20L), true, 10, BatchSizer.fixed(10))) {
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertNull(transfer.nextBatch(loader));
+        }
+
+        assertEquals(ids(1, 20), loader.ids);
+    }
+
+    @Test
+    void shouldQueryEveryBatchWhenSeeking() throws Exception {
+        try (DirectTransfer transfer = new DirectTransfer(connection, IdRange.wholeTable("MODIFICATIONS", 25), true, 10, BatchSizer.fixed(10))) {
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            execute("INSERT INTO MODIFICATIONS (ID, REVISION) SELECT X, 'r' || X FROM SYSTEM_RANGE(26, 30)");
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertNull(transfer.nextBatch(loader));
+        }
+
+        assertEquals(ids(1, 30), loader.ids);
+    }
+
+    @Test
+    void shouldReadEveryBatchFromOneResultSetWhenStreaming() throws Exception {
+        try (DirectTransfer transfer = new DirectTransfer(connection, IdRange.wholeTable("MODIFICATIONS", 25), false, 10, BatchSizer.fixed(10))) {
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            // the records were selected by the first query, so records added after it are not read
+            execute("INSERT INTO MODIFICATIONS (ID, REVISION) SELECT X, 'r' || X FROM SYSTEM_RANGE(26, 30)");
+            assertEquals(10, transfer.nextBatch(loader).batchRows());
+            assertEquals(5, transfer.nextBatch(loader).batchRows());
+            assertNull(transfer.nextBatch(loader));
+        }
+
+        assertEquals(ids(1, 25), loader.ids);
+    }
+
+    private static List<Long> ids(long from, long to) {
+        return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static class RecordingLoader implements TableLoader {
+        private final List<Long> ids = new ArrayList<>();
+
+        @Override
+        public boolean load(Result<Record> records) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean load(SourceRows rows, int maxRows) throws SQLException {
+            int rowCount = 0;
+            while (rowCount < maxRows && rows.next()) {
+                ids.add(rows.lastId());
+                rowCount++;
+            }
+            return rowCount > 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
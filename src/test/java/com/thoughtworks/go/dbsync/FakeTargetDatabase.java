@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A target database that only understands the statements that {@link BulkLoadProfile} uses to read and change settings
+ * on MySQL and PostgreSQL. Settings are kept per scope, as {@code GLOBAL.<name>} or {@code SESSION.<name>}, and settings
+ * that are {@link #readOnly} cannot be changed.
+ */
+class FakeTargetDatabase {
+    private static final Pattern MYSQL_SET = Pattern.compile("SET (GLOBAL|SESSION) (\\w+) = (.*)");
+    private static final Pattern MYSQL_SELECT = Pattern.compile("SELECT @@(GLOBAL|SESSION)\\.(\\w+)");
+    private static final Pattern POSTGRES_SET = Pattern.compile("SET (\\w+) = '(.*)'");
+    private static final Pattern POSTGRES_SELECT = Pattern.compile("SELECT current_setting\\('(\\w+)'\\)");
+
+    final Map<String, String> settings = new HashMap<>();
+    final Set<String> readOnly = new HashSet<>();
+    final List<String> executed = new ArrayList<>();
+    boolean autoCommit = true;
+    boolean closed;
+    int commits;
+    int rollbacks;
+
+    DataSource dataSource() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+                closed = false;
+                return connection();
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createStatement":
+                    return statement();
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    commits++;
+                    return null;
+                case "rollback":
+                    rollbacks++;
+                    return null;
+                case "close":
+                    closed = true;
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Statement statement() {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "execute":
+                    execute((String) args[0]);
+                    return false;
+                case "executeQuery":
+                    return resultSet(query((String) args[0]));
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private void execute(String sql) throws SQLException {
+        executed.add(sql);
+        Matcher mysql = MYSQL_SET.matcher(sql);
+        Matcher postgres = POSTGRES_SET.matcher(sql);
+        if (mysql.matches()) {
+            change(mysql.group(1) + "." + mysql.group(2), mysql.group(3));
+        } else if (postgres.matches()) {
+            change("SESSION." + postgres.group(1), postgres.group(2));
+        }
+    }
+
+    private void change(String setting, String value) throws SQLException {
+        if (readOnly.contains(setting)) {
+            throw new SQLException("Access denied; you need the SUPER privilege for this operation");
+        }
+        settings.put(setting, value);
+    }
+
+    private List<String> query(String sql) {
+        executed.add(sql);
+        Matcher mysql = MYSQL_SELECT.matcher(sql);
+        Matcher postgres = POSTGRES_SELECT.matcher(sql);
+        if (mysql.matches()) {
+            return Collections.singletonList(settings.get(mysql.group(1) + "." + mysql.group(2)));
+        } else if (postgres.matches()) {
+            return Collections.singletonList(settings.get("SESSION." + postgres.group(1)));
+        }
+        return List.of();
+    }
+
+    private ResultSet resultSet(List<String> rows) {
+        Iterator<String> iterator = rows.iterator();
+        String[] current = {null};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    current[0] = iterator.hasNext() ? iterator.next() : null;
+                    return current[0] != null;
+                case "getString":
+                    return current[0];
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdRangeSchedulerTest {
+
+    @Test
+    void shouldHandOutTheLargestRangesFirst() {
+        IdRange agents = IdRange.wholeTable("agents", 10);
+        IdRange modifications = new IdRange("modifications", 1000, 0, null);
+        IdRange buildStates = new IdRange("buildstatetransitions", 5000, 0, null);
+        IdRangeScheduler scheduler = new IdRangeScheduler(List.of(agents, modifications, buildStates),
+                Map.of("modifications", 4000L, "buildstatetransitions", 40L), 2);
+
+        assertSame(modifications, scheduler.next());
+        assertSame(buildStates, scheduler.next());
+        assertSame(agents, scheduler.next());
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    void shouldReportCompletionOfTablesOnceAllTheirRangesComplete() {
+        IdRange first = new IdRange("pipelines", 10, 0, 10L);
+        IdRange second = new IdRange("pipelines", 10, 10L, null);
+        IdRangeScheduler scheduler = new IdRangeScheduler(List.of(first, second), Map.of(), 1);
+
+        scheduler.completed(scheduler.next());
+        assertTrue(scheduler.completionMillis().isEmpty());
+
+        scheduler.completed(scheduler.next());
+        assertEquals(List.of("pipelines"), List.copyOf(scheduler.completionMillis().keySet()));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdRangeSplitterTest {
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+        execute("CREATE TABLE MODIFICATIONS (ID BIGINT PRIMARY KEY, COMMENT VARCHAR(255))");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void shouldSplitDenseIdsIntoRangesOfEqualWidth() {
+        assertEquals(List.of(25L, 50L, 75L, 100L), IdRangeSplitter.equalWidthBounds(1, 100, 4));
+        assertEquals(List.of(34L, 68L, 100L), IdRangeSplitter.equalWidthBounds(1, 100, 3));
+    }
+
+    @Test
+    void shouldNotCreateEmptyRangesWhenThereAreMoreRangesThanIds() {
+        assertEquals(List.of(11L, 12L), IdRangeSplitter.equalWidthBounds(11, 12, 5));
+    }
+
+    @Test
+    void shouldNotSplitTablesThatAreEmptyDespiteTheirEstimate() {
+        List<IdRange> ranges = new IdRangeSplitter(100).split(connection, "MODIFICATIONS", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).fromIdExclusive);
+        assertNull(ranges.get(0).toIdInclusive);
+    }
+
+    @Test
+    void shouldSplitDenseIdsOfATable() throws SQLException {
+        execute("INSERT INTO MODIFICATIONS (ID) SELECT X FROM SYSTEM_RANGE(1, 1000)");
+
+        List<IdRange> ranges = new IdRangeSplitter(250).split(connection, "MODIFICATIONS", 1000);
+
+        assertEquals(4, ranges.size());
+        for (IdRange range : ranges) {
+            assertEquals(250, count(range));
+        }
+    }
+
+    @Test
+    void shouldSplitSparseIdsOfATableIntoRangesOfEqualNumberOfRecords() throws SQLException {
+        execute("INSERT INTO MODIFICATIONS (ID) SELECT X FROM SYSTEM_RANGE(1, 500)");
+        execute("INSERT INTO MODIFICATIONS (ID) SELECT 1000000 + X FROM SYSTEM_RANGE(1, 500)");
+
+        List<IdRange> ranges = new IdRangeSplitter(250).split(connection, "MODIFICATIONS", 1000);
+
+        assertEquals(4, ranges.size());
+        assertNull(ranges.get(3).toIdInclusive);
+        for (IdRange range : ranges) {
+            assertEquals(250, count(range));
+        }
+    }
+
+    @Test
+    void shouldTakeQuantilesOfSampledIds() {
+        List<Long> sampledIds = List.of(1L, 2L, 3L, 10L, 20L, 30L, 100L, 200L, 300L);
+
+        assertEquals(List.of(3L, 30L, Long.MAX_VALUE), IdRangeSplitter.quantiles(sampledIds, 3));
+        assertEquals(List.of(1L, Long.MAX_VALUE), IdRangeSplitter.quantiles(List.of(1L, 1L, 1L, 2L), 4));
+    }
+
+    private long count(IdRange range) throws SQLException {
+        String upperBound = range.toIdInclusive == null ? "" : " AND ID <= " + range.toIdInclusive;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM MODIFICATIONS WHERE ID > " + range.fromIdExclusive + upperBound)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexBuildTest {
+    private static final String UPDATE_SQL = "-- Lock Database\n" +
+            "UPDATE DATABASECHANGELOGLOCK SET LOCKED = TRUE WHERE ID = 1;\n" +
+            "\n" +
+            "-- Changeset db-migration-scripts/initial/create-index.xml::27::gocd(generated)\n" +
+            "ALTER TABLE JOBAGENTMETADATA ADD UNIQUE (JOBID);\n" +
+            "\n" +
+            "INSERT INTO DATABASECHANGELOG (ID, AUTHOR) VALUES ('27', 'gocd(generated)');\n" +
+            "\n" +
+            "-- Changeset db-migration-scripts/initial/create-index.xml::101::gocd(generated)\n" +
+            "ALTER TABLE STAGES ADD CONSTRAINT FK_STAGES_PIPELINES FOREIGN KEY (PIPELINEID)\n" +
+            "    REFERENCES PIPELINES (ID) ON UPDATE RESTRICT ON DELETE CASCADE;\n" +
+            "\n" +
+            "INSERT INTO DATABASECHANGELOG (ID, AUTHOR) VALUES ('101', 'gocd(generated)');\n" +
+            "\n" +
+            "-- Release Database Lock\n" +
+            "UPDATE DATABASECHANGELOGLOCK SET LOCKED = FALSE WHERE ID = 1;\n";
+
+    @Test
+    void shouldMatchGeneratedStatementsWithChangeSets() throws Exception {
+        List<IndexBuild> builds;
+        try (InputStream changeLog = getClass().getResourceAsStream("/db-migration-scripts/initial/create-index.xml")) {
+            builds = IndexBuild.parse(changeLog, UPDATE_SQL);
+        }
+
+        assertEquals(2, builds.size());
+
+        IndexBuild uniqueConstraint = builds.get(0);
+        assertFalse(uniqueConstraint.foreignKey);
+        assertEquals(Set.of("JOBAGENTMETADATA"), uniqueConstraint.tables);
+        assertEquals(List.of(
+                "ALTER TABLE JOBAGENTMETADATA ADD UNIQUE (JOBID)",
+                "INSERT INTO DATABASECHANGELOG (ID, AUTHOR) VALUES ('27', 'gocd(generated)')"
+        ), uniqueConstraint.statements);
+
+        IndexBuild foreignKey = builds.get(1);
+        assertTrue(foreignKey.foreignKey);
+        assertEquals(Set.of("STAGES", "PIPELINES"), foreignKey.tables);
+        assertEquals("ALTER TABLE STAGES ADD CONSTRAINT FK_STAGES_PIPELINES FOREIGN KEY (PIPELINEID)\n    REFERENCES PIPELINES (ID) ON UPDATE RESTRICT ON DELETE CASCADE", foreignKey.statements.get(0));
+    }
+}
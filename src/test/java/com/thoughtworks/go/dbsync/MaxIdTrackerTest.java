@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MaxIdTrackerTest {
+
+    @Test
+    void shouldTrackTheLargestIdRegardlessOfTheOrderOfBatches() {
+        MaxIdTracker tracker = new MaxIdTracker();
+        tracker.copied("PIPELINES", 500);
+        tracker.copied("pipelines", 1200);
+        tracker.copied("PIPELINES", 800);
+
+        assertEquals(OptionalLong.of(1200), tracker.maxId("pipelines"));
+    }
+
+    @Test
+    void shouldScanTablesThatWereNotCopiedEntirelyByThisRun() {
+        MaxIdTracker tracker = new MaxIdTracker();
+        tracker.copied("stages", 42);
+        tracker.copied("builds", 7);
+        tracker.copiedPreviously("builds");
+
+        assertEquals("select setval('stages_id_seq', 42), " +
+                        "setval('builds_id_seq', (select max(id) from builds)), " +
+                        "setval('agents_id_seq', (select max(id) from agents))",
+                tracker.setSequencesSql(List.of("stages", "builds", "agents")));
+    }
+}
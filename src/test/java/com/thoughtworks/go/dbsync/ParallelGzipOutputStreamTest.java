@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ParallelGzipOutputStreamTest {
+
+    @Test
+    void shouldWriteSingleGzipMemberFromBlocksCompressedInParallel() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            sql.append("INSERT INTO pipelines (id, name, counter) VALUES (").append(i).append(", 'pipeline-").append(i % 37).append("', ").append(i * 7).append(");\n");
+        }
+        byte[] expected = sql.toString().getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(expected, gunzip(gzip(expected, 64 * 1024)));
+        assertArrayEquals(expected, gunzip(gzip(expected, 1000)));
+        assertArrayEquals(new byte[0], gunzip(gzip(new byte[0], 1000)));
+    }
+
+    private static byte[] gzip(byte[] bytes, int blockSize) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, blockSize)) {
+            // written in uneven chunks, so that writes cross block boundaries
+            for (int offset = 0; offset < bytes.length; offset += 777) {
+                out.write(bytes, offset, Math.min(777, bytes.length - offset));
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostgresCopyLoaderTest {
+
+    @Test
+    void shouldEncodeValuesInCopyTextFormat() throws IOException {
+        assertEquals("\\N", encode(null));
+        assertEquals("t", encode(true));
+        assertEquals("42", encode(42L));
+        assertEquals("1000", encode(new BigDecimal("1E+3")));
+        assertEquals("2020-05-01 10:20:30.5", encode(Timestamp.valueOf("2020-05-01 10:20:30.5")));
+        assertEquals("\\\\x00ff10", encode(new byte[]{0, (byte) 0xff, 0x10}));
+    }
+
+    @Test
+    void shouldEscapeSpecialCharactersInText() throws IOException {
+        assertEquals("line1\\nline2\\r\\tindented \\\\ backslash", encode("line1\nline2\r\tindented \\ backslash"));
+    }
+
+    private static String encode(Object value) throws IOException {
+        StringWriter writer = new StringWriter();
+        PostgresCopyLoader.writeValue(writer, value);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunMetricsTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void shouldWriteTheFinalStatusToTheStatusFileAndTheReport() throws Exception {
+        File statusFile = new File(tempDir, "status.json");
+        File reportFile = new File(tempDir, "report.json");
+        RunMetrics metrics = new RunMetrics();
+        metrics.startStatusUpdates(statusFile, 60);
+
+        metrics.finish(reportFile, "failed: java.sql.SQLException: connection refused");
+
+        assertTrue(read(statusFile).contains("\"status\": \"failed: java.sql.SQLException: connection refused\""));
+        assertTrue(read(reportFile).contains("\"status\": \"failed: java.sql.SQLException: connection refused\""));
+    }
+
+    @Test
+    void shouldKeepTheFirstFinalStatus() throws Exception {
+        File reportFile = new File(tempDir, "report.json");
+        RunMetrics metrics = new RunMetrics();
+
+        metrics.finish(reportFile, "verification failed");
+        metrics.finish(reportFile, "failed: java.lang.RuntimeException");
+
+        assertTrue(read(reportFile).contains("\"status\": \"verification failed\""));
+    }
+
+    private static String read(File file) throws Exception {
+        return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+    }
+}
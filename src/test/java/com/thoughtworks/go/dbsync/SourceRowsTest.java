@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.*;
+
+import static com.thoughtworks.go.dbsync.SourceRows.ColumnKind.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SourceRowsTest {
+    private static final String COLUMNS = "(ID BIGINT PRIMARY KEY, REVISION INT, SIZE BIGINT, RATIO DOUBLE, ACTIVE BOOLEAN, COMMENT VARCHAR(255), " +
+            "MODIFIED_TIME TIMESTAMP, CONTENT VARBINARY(16), AMOUNT DECIMAL(10, 2), BUILD_DATE DATE)";
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:", "sa", "");
+        execute("CREATE TABLE MATERIALS " + COLUMNS);
+        execute("CREATE TABLE TARGET_MATERIALS " + COLUMNS);
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO MATERIALS VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            insert.setLong(1, 1);
+            insert.setInt(2, -42);
+            insert.setLong(3, Long.MIN_VALUE);
+            insert.setDouble(4, -0.25);
+            insert.setBoolean(5, true);
+            insert.setString(6, "tab\there\nnewline \\ backslash");
+            insert.setTimestamp(7, Timestamp.valueOf("2020-01-02 03:04:05.6"));
+            insert.setBytes(8, new byte[]{0, (byte) 0xff});
+            insert.setBigDecimal(9, new BigDecimal("-12.50"));
+            insert.setDate(10, Date.valueOf("2020-01-02"));
+            insert.executeUpdate();
+
+            insert.setLong(1, 2);
+            for (int column = 2; column <= 10; column++) {
+                insert.setNull(column, Types.NULL);
+            }
+            insert.executeUpdate();
+
+            insert.setLong(1, 3);
+            insert.setInt(2, 0);
+            insert.setLong(3, -1);
+            insert.setDouble(4, 0);
+            insert.setBoolean(5, false);
+            insert.setString(6, "");
+            insert.setTimestamp(7, Timestamp.valueOf("1970-01-01 00:00:00"));
+            insert.setBytes(8, new byte[0]);
+            insert.setBigDecimal(9, BigDecimal.ZERO);
+            insert.setDate(10, Date.valueOf("1970-01-01"));
+            insert.executeUpdate();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void shouldReadNumbersAndBooleansAsPrimitives() {
+        assertEquals(LONG, SourceRows.kindOf(Types.BIGINT));
+        assertEquals(INTEGER, SourceRows.kindOf(Types.INTEGER));
+        assertEquals(INTEGER, SourceRows.kindOf(Types.SMALLINT));
+        assertEquals(DOUBLE, SourceRows.kindOf(Types.DOUBLE));
+        assertEquals(BOOLEAN, SourceRows.kindOf(Types.BOOLEAN));
+        assertEquals(BOOLEAN, SourceRows.kindOf(Types.BIT));
+    }
+
+    @Test
+    void shouldReadLargeObjectsAsStringsAndBytes() {
+        assertEquals(STRING, SourceRows.kindOf(Types.CLOB));
+        assertEquals(STRING, SourceRows.kindOf(Types.VARCHAR));
+        assertEquals(BYTES, SourceRows.kindOf(Types.BLOB));
+        assertEquals(BYTES, SourceRows.kindOf(Types.VARBINARY));
+    }
+
+    @Test
+    void shouldFallBackToObjectsForOtherTypes() {
+        assertEquals(OBJECT, SourceRows.kindOf(Types.TIMESTAMP_WITH_TIMEZONE));
+        assertEquals(OBJECT, SourceRows.kindOf(Types.OTHER));
+    }
+
+    @Test
+    void shouldWriteCopyTextLikeThePostgresCopyLoader() throws Exception {
+        String copyText = copyText("MATERIALS");
+
+        assertEquals(copyTextOfObjects("MATERIALS"), copyText);
+        assertEquals("1\t-42\t-9223372036854775808\t-0.25\tt\ttab\\there\\nnewline \\\\ backslash\t", copyText.substring(0, copyText.indexOf("\t2020")));
+        assertEquals("2\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N\t\\N", copyText.split("\n")[1]);
+    }
+
+    @Test
+    void shouldBindNullsOfPrimitiveColumnsAsNulls() throws Exception {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM MATERIALS ORDER BY ID");
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO TARGET_MATERIALS VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            SourceRows rows = new SourceRows(resultSet.getMetaData());
+            rows.readFrom(resultSet);
+            rows.startBatch(0);
+            while (rows.next()) {
+                rows.bind(insert);
+                insert.executeUpdate();
+            }
+            assertEquals(3, rows.batchRows());
+            assertEquals(3, rows.maxId());
+        }
+
+        assertEquals(copyTextOfObjects("MATERIALS"), copyTextOfObjects("TARGET_MATERIALS"));
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT REVISION, SIZE, RATIO, ACTIVE FROM TARGET_MATERIALS WHERE ID = 2")) {
+            assertTrue(resultSet.next());
+            assertNull(resultSet.getObject(1));
+            assertNull(resultSet.getObject(2));
+            assertNull(resultSet.getObject(3));
+            assertNull(resultSet.getObject(4));
+        }
+    }
+
+    private String copyText(String table) throws SQLException, IOException {
+        StringWriter writer = new StringWriter();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " ORDER BY ID")) {
+            SourceRows rows = new SourceRows(resultSet.getMetaData());
+            rows.readFrom(resultSet);
+            rows.startBatch(0);
+            while (rows.next()) {
+                rows.writeCopyText(writer);
+            }
+        }
+        return writer.toString();
+    }
+
+    private String copyTextOfObjects(String table) throws SQLException, IOException {
+        StringWriter writer = new StringWriter();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " ORDER BY ID")) {
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int column = 1; column <= columnCount; column++) {
+                    if (column > 1) {
+                        writer.write('\t');
+                    }
+                    PostgresCopyLoader.writeValue(writer, resultSet.getObject(column));
+                }
+                writer.write('\n');
+            }
+        }
+        return writer.toString();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
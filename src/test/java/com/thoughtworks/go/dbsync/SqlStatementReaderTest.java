@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlStatementReaderTest {
+
+    @Test
+    void shouldSplitStatementsOnTerminatorOutsideOfLiteralsAndComments() throws IOException {
+        String dump = "--\n" +
+                "-- dumping records for table PIPELINES\n" +
+                "--\n" +
+                "insert into PIPELINES (ID, NAME) values (1, 'it''s;\n" +
+                "still the name'), (2, '-- not a comment');\n" +
+                "-- Lock Database ';\n" +
+                "UPDATE DATABASECHANGELOGLOCK SET LOCKED = TRUE WHERE ID = 1;\n" +
+                "\n" +
+                ";\n" +
+                "select setval('pipelines_id_seq', (select max(id) from PIPELINES))";
+
+        assertEquals(List.of(
+                "--",
+                "-- dumping records for table PIPELINES",
+                "--",
+                "insert into PIPELINES (ID, NAME) values (1, 'it''s;\nstill the name'), (2, '-- not a comment')",
+                "-- Lock Database ';",
+                "UPDATE DATABASECHANGELOGLOCK SET LOCKED = TRUE WHERE ID = 1",
+                "select setval('pipelines_id_seq', (select max(id) from PIPELINES))"
+        ), readAll(dump));
+    }
+
+    private static List<String> readAll(String dump) throws IOException {
+        List<String> statements = new ArrayList<>();
+        try (SqlStatementReader reader = new SqlStatementReader(new StringReader(dump))) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.thoughtworks.go.dbsync;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableInventoryTest {
+
+    @Test
+    void shouldWeighLargeObjectsHeavierThanShortColumns() {
+        assertEquals(8, TableInventory.columnBytes(Types.BIGINT, 19));
+        assertEquals(128, TableInventory.columnBytes(Types.VARCHAR, 255));
+        assertTrue(TableInventory.columnBytes(Types.CLOB, Integer.MAX_VALUE) > TableInventory.columnBytes(Types.VARCHAR, 1024));
+    }
+}